@@ -0,0 +1,63 @@
+package in.drozd.kdhost;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Preparing code for INITCODE: chunking of file content and encoding of chunks.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class KDCodeEncodingBenchmark {
+
+	@Param({ "4096", "262144" })
+	int size;
+
+	@Param({ "DECIMAL", "HEX", "BASE64", "RAW" })
+	KDCodeEncoding encoding;
+
+	private KDHost host;
+	private byte[] content;
+	private int chunkSize;
+
+	@Setup
+	public void setup() {
+		host = new KDHost(Logger.getAnonymousLogger());
+		final String line = "\tset x=$$getValue^MRPC121(\"ABC\",123) // comment\r\n";
+		final StringBuilder sb = new StringBuilder(size + line.length());
+		while (sb.length() < size)
+			sb.append(line);
+		content = sb.substring(0, size).getBytes(StandardCharsets.US_ASCII);
+		chunkSize = encoding.chunkSize(16384);
+	}
+
+	@Benchmark
+	public byte[][] chunk() {
+		return host.chunk(content, chunkSize);
+	}
+
+	@Benchmark
+	public void chunkAndEncode(Blackhole bh) {
+		for (byte[] chunk : host.chunk(content, chunkSize)) {
+			bh.consume(encoding.encode(chunk));
+		}
+	}
+}
@@ -0,0 +1,47 @@
+package in.drozd.kdhost;
+
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import in.drozd.kdhost.utils.KDFileUtils;
+
+/**
+ * Resolving element type and local path from file name.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class KDElementTypesBenchmark {
+
+	@Param({ "MRPC121.PROC", "DEP-BAL.COL", "DEP.TBL", "UTLREAD.psl", "system.ini" })
+	String fileName;
+
+	@Benchmark
+	public KDElementTypes typeForFileName() {
+		return KDElementTypes.typeForFileName(fileName);
+	}
+
+	@Benchmark
+	public KDElementTypes typeForExtension() {
+		return KDElementTypes.typeForExtension(KDFileUtils.getExtension(fileName).orElse(""));
+	}
+
+	@Benchmark
+	public Path getDefaultPath() {
+		return KDFileUtils.getDefaultPath(KDElementTypes.typeForFileName(fileName), fileName);
+	}
+}
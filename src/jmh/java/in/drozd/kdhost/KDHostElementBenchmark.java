@@ -0,0 +1,55 @@
+package in.drozd.kdhost;
+
+import java.lang.reflect.Proxy;
+import java.sql.ResultSet;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import in.drozd.kdhost.utils.KDStringUtils;
+
+/**
+ * Mapping of listing rows to elements (done for every row of {@code list} and
+ * {@code getall}).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class KDHostElementBenchmark {
+
+	@Param({ "PROCEDURE", "COLUMN", "FKEY" })
+	KDElementTypes type;
+
+	private ResultSet row;
+
+	@Setup
+	public void setup() {
+		final String[] values = { "DEP", "BAL,CID", "LN" };
+		// Only getString(int) is used by mapping
+		row = (ResultSet) Proxy.newProxyInstance(ResultSet.class.getClassLoader(), new Class<?>[] { ResultSet.class },
+				(proxy, method, args) -> "getString".equals(method.getName()) ? values[(Integer) args[0] - 1] : null);
+	}
+
+	@Benchmark
+	public KDHostElement mapRow() {
+		return new KDHostElement(row, type);
+	}
+
+	@Benchmark
+	public long countQueryColumns() {
+		return KDStringUtils.countChar(type.getQueryColumns(), ',');
+	}
+}
@@ -0,0 +1,69 @@
+package in.drozd.kdhost;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Wall time of kdhost process (start to exit) for offline command, command
+ * parsing and query executed by simulator. Needs packaged jar (and archive
+ * when cds is true): mvn -Pcds,jmh package exec:exec -Djmh.args="Startup"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 10)
+@Fork(1)
+public class KDStartupBenchmark {
+
+	private static final Path JAR = Path.of("target", "kdhost.jar");
+	private static final Path ARCHIVE = Path.of("target", "kdhost.jsa");
+	private static final Path TEST_CLASSES = Path.of("target", "test-classes");
+
+	@Param({ "--version", "list -s", "sql select fid from dbtbl1" })
+	String command;
+
+	@Param({ "false", "true" })
+	boolean cds;
+
+	private List<String> commandLine;
+
+	@Setup
+	public void setup() throws IOException {
+		if (!Files.isRegularFile(JAR) || (cds && !Files.isRegularFile(ARCHIVE)))
+			throw new IllegalStateException("Package kdhost first: mvn -Pcds package");
+		commandLine = new ArrayList<>();
+		commandLine.add(Path.of(System.getProperty("java.home"), "bin", "java").toString());
+		if (cds)
+			commandLine.add("-XX:SharedArchiveFile=" + ARCHIVE);
+		commandLine.addAll(Arrays.asList("-DKDHOST_URL=jdbc:kdhost:sim:startup", "-DKDHOST_DAEMON=false",
+				"-DKDHOST_HOME=" + Files.createTempDirectory("kdhost-startup"), "-cp",
+				JAR + File.pathSeparator + TEST_CLASSES, "in.drozd.kdhost.KDHostLauncher"));
+		commandLine.addAll(Arrays.asList(command.split(" ", 2)));
+	}
+
+	@Benchmark
+	public int run() throws IOException, InterruptedException {
+		final Process process = new ProcessBuilder(commandLine).redirectErrorStream(true)
+				.redirectOutput(ProcessBuilder.Redirect.DISCARD).start();
+		return process.waitFor();
+	}
+}
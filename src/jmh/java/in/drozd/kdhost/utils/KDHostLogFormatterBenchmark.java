@@ -0,0 +1,52 @@
+package in.drozd.kdhost.utils;
+
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Formatting of one log line.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class KDHostLogFormatterBenchmark {
+
+	private KDHostLogFormatter formatter;
+	private LogRecord record;
+	private LogRecord recordWithParameters;
+
+	@Setup
+	public void setup() {
+		formatter = new KDHostLogFormatter();
+		record = new LogRecord(Level.INFO, "Getting element: MRPC121.PROC");
+		record.setSourceMethodName("getElement");
+		recordWithParameters = new LogRecord(Level.FINE, "Opened host session {0} of {1}");
+		recordWithParameters.setSourceMethodName("acquire");
+		recordWithParameters.setParameters(new Object[] { 1, 4 });
+	}
+
+	@Benchmark
+	public String format() {
+		return formatter.format(record);
+	}
+
+	@Benchmark
+	public String formatWithParameters() {
+		return formatter.format(recordWithParameters);
+	}
+}
@@ -0,0 +1,109 @@
+package in.drozd.kdhost;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.List;
+
+import in.drozd.kdhost.exceptions.KDHostException;
+
+/**
+ * Parameterized INSERT/UPDATE executed for rows of values, one JDBC batch (one
+ * host round trip) per call. Values are bound to parameters in order.
+ */
+public class KDBatchLoader {
+
+	private final String sql;
+
+	public KDBatchLoader(String sql, int columns) {
+		final int parameters = parameterCount(sql);
+		if (parameters != columns)
+			throw new KDHostException(String.format(
+					"Statement has %d parameters, but %d columns are loaded (select columns with --columns)",
+					parameters, columns));
+		this.sql = sql;
+	}
+
+	/**
+	 * Number of ? placeholders (outside of quoted literals)
+	 */
+	public static int parameterCount(String sql) {
+		int count = 0;
+		char quote = 0;
+		for (int i = 0; i < sql.length(); i++) {
+			final char c = sql.charAt(i);
+			if (quote != 0) {
+				if (c == quote)
+					quote = 0;
+			} else if (c == '\'' || c == '"') {
+				quote = c;
+			} else if (c == '?') {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Execute statement for all rows, returns number of updated rows
+	 */
+	public int execute(Connection connection, List<String[]> rows) throws SQLException {
+		long sent = sql.length();
+		for (String[] row : rows) {
+			for (String value : row) {
+				if (value != null)
+					sent += value.length();
+			}
+		}
+		final KDHostMetrics.Sample sample = KDHostMetrics.get().start("SQL_BATCH", sent);
+		try (PreparedStatement ps = connection.prepareStatement(sql)) {
+			int updated;
+			try {
+				updated = executeBatch(ps, rows);
+			} catch (SQLFeatureNotSupportedException e) {
+				// Driver without batch support, one round trip per row
+				ps.clearParameters();
+				updated = executeRows(ps, rows);
+			}
+			if (!connection.getAutoCommit())
+				connection.commit();
+			sample.ok(0);
+			return updated;
+		} finally {
+			sample.stop();
+		}
+	}
+
+	private static int executeBatch(PreparedStatement ps, List<String[]> rows) throws SQLException {
+		for (String[] row : rows) {
+			bind(ps, row);
+			ps.addBatch();
+		}
+		int updated = 0;
+		for (int count : ps.executeBatch()) {
+			updated += count == Statement.SUCCESS_NO_INFO ? 1 : Math.max(count, 0);
+		}
+		return updated;
+	}
+
+	private static int executeRows(PreparedStatement ps, List<String[]> rows) throws SQLException {
+		int updated = 0;
+		for (String[] row : rows) {
+			bind(ps, row);
+			updated += ps.executeUpdate();
+		}
+		return updated;
+	}
+
+	private static void bind(PreparedStatement ps, String[] row) throws SQLException {
+		for (int i = 0; i < row.length; i++) {
+			if (row[i] == null)
+				ps.setNull(i + 1, Types.VARCHAR);
+			else
+				ps.setString(i + 1, row[i]);
+		}
+	}
+}
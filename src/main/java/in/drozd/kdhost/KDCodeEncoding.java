@@ -0,0 +1,155 @@
+package in.drozd.kdhost;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Locale;
+import java.util.stream.Collectors;
+
+import in.drozd.kdhost.exceptions.KDHostException;
+
+/**
+ * Encoding of file content sent to host with INITCODE request.
+ *
+ * DECIMAL is understood by all hosts. Other encodings are used only when host
+ * reports them in list of framework features (GETFWKFTRS). Name of encoding
+ * used for chunk is sent in OBJTYPE parameter of INITCODE (empty for DECIMAL).
+ */
+public enum KDCodeEncoding {
+	/**
+	 * Each byte as decimal number followed by '|'
+	 */
+	DECIMAL {
+		@Override
+		public String encode(byte[] chunk) {
+			final StringBuilder sb = new StringBuilder(chunk.length * 4);
+			for (byte b : chunk) {
+				sb.append(b).append('|');
+			}
+			return sb.toString();
+		}
+
+		@Override
+		public int chunkSize(int wireLimit) {
+			// "-128|" is the longest encoded byte
+			return wireLimit / 5;
+		}
+
+		@Override
+		public String feature() {
+			return "";
+		}
+
+		@Override
+		public String marker() {
+			return "";
+		}
+	},
+	HEX {
+		private final char[] digits = "0123456789ABCDEF".toCharArray();
+
+		@Override
+		public String encode(byte[] chunk) {
+			final char[] out = new char[chunk.length * 2];
+			for (int i = 0; i < chunk.length; i++) {
+				out[i * 2] = digits[(chunk[i] >> 4) & 0xF];
+				out[i * 2 + 1] = digits[chunk[i] & 0xF];
+			}
+			return new String(out);
+		}
+
+		@Override
+		public int chunkSize(int wireLimit) {
+			return wireLimit / 2;
+		}
+	},
+	BASE64 {
+		@Override
+		public String encode(byte[] chunk) {
+			return Base64.getEncoder().encodeToString(chunk);
+		}
+
+		@Override
+		public int chunkSize(int wireLimit) {
+			// Full 4 character groups only, so chunks can be decoded one by one
+			return wireLimit / 4 * 3;
+		}
+	},
+	/**
+	 * Content as is, only for printable ASCII sources
+	 */
+	RAW {
+		@Override
+		public String encode(byte[] chunk) {
+			return new String(chunk, StandardCharsets.US_ASCII);
+		}
+
+		@Override
+		public int chunkSize(int wireLimit) {
+			return wireLimit;
+		}
+
+		@Override
+		public boolean canEncode(byte[] content) {
+			for (byte b : content) {
+				if ((b < 0x20 || b > 0x7E) && b != '\r' && b != '\n' && b != '\t')
+					return false;
+			}
+			return true;
+		}
+	};
+
+	// Preferred order - densest first
+	private static final KDCodeEncoding[] PREFERRED = { RAW, BASE64, HEX };
+
+	public abstract String encode(byte[] chunk);
+
+	/**
+	 * Number of bytes that can be sent in one INITCODE request.
+	 *
+	 * @param wireLimit maximum length of encoded chunk
+	 */
+	public abstract int chunkSize(int wireLimit);
+
+	public boolean canEncode(byte[] content) {
+		return true;
+	}
+
+	/**
+	 * Name of feature reported by host when it can decode this encoding.
+	 */
+	public String feature() {
+		return "INITCODE_" + this.name();
+	}
+
+	public String marker() {
+		return this.name();
+	}
+
+	/**
+	 * Select densest encoding supported by host.
+	 *
+	 * @param content      content to send
+	 * @param hostFeatures features reported by host (GETFWKFTRS)
+	 */
+	public static KDCodeEncoding select(byte[] content, String hostFeatures) {
+		final String features = hostFeatures == null ? "" : hostFeatures.toUpperCase(Locale.ROOT);
+		for (KDCodeEncoding encoding : PREFERRED) {
+			if (features.contains(encoding.feature()) && encoding.canEncode(content))
+				return encoding;
+		}
+		return DECIMAL;
+	}
+
+	/**
+	 * Encoding by name (case insensitive), e.g. from KDHOST_CODE_ENCODING
+	 */
+	public static KDCodeEncoding forName(String name) {
+		try {
+			return valueOf(name.trim().toUpperCase(Locale.ROOT));
+		} catch (IllegalArgumentException e) {
+			throw new KDHostException(String.format("Unknown code encoding %s, allowed values: %s", name,
+					Arrays.stream(values()).map(KDCodeEncoding::name).collect(Collectors.joining(", "))));
+		}
+	}
+}
@@ -0,0 +1,92 @@
+package in.drozd.kdhost;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import in.drozd.kdhost.exceptions.KDHostException;
+import in.drozd.kdhost.exceptions.KDHostSqlException;
+import in.drozd.kdhost.exceptions.KDHostUnableToConnectException;
+import in.drozd.kdhost.exceptions.KDHostUnsupportedOperation;
+
+/**
+ * Compiles elements in waves ordered by {@link KDElementTypes#getCompileOrder()}.
+ * Elements of one wave are compiled in parallel. When element fails, elements
+ * of the same table in later waves (columns of table, triggers, ...) are not
+ * compiled, other elements are.
+ */
+public class KDCompileScheduler {
+
+	private final KDHost host;
+	private final Function<KDHostElement, String> compiler;
+	private final int jobs;
+	private final Logger log;
+
+	public KDCompileScheduler(KDHost host, int jobs, Logger log) {
+		this(host, host::compileElement, jobs, log);
+	}
+
+	KDCompileScheduler(KDHost host, Function<KDHostElement, String> compiler, int jobs, Logger log) {
+		this.host = host;
+		this.compiler = compiler;
+		this.jobs = jobs;
+		this.log = log;
+	}
+
+	/**
+	 * Results are in the same order as elements.
+	 */
+	public List<KDTscResult> compile(List<KDHostElement> elements) {
+		final KDTscResult[] results = new KDTscResult[elements.size()];
+		final Map<Integer, List<Integer>> waves = IntStream.range(0, elements.size()).boxed().collect(Collectors
+				.groupingBy(i -> elements.get(i).getElementType().getCompileOrder(), TreeMap::new, Collectors.toList()));
+		final Set<String> failedTables = ConcurrentHashMap.newKeySet();
+
+		waves.forEach((order, wave) -> {
+			log.log(Level.FINE, "Compiling {0} elements of order {1}", new Object[] { wave.size(), order });
+			host.forEachParallel(wave.stream(), jobs,
+					i -> results[i] = compile(elements.get(i), failedTables));
+		});
+		return Arrays.asList(results);
+	}
+
+	private KDTscResult compile(KDHostElement el, Set<String> failedTables) {
+		final KDTscResult result = new KDTscResult(el.getFilePath());
+		final Optional<String> table = tableOf(el);
+		if (table.isPresent() && failedTables.contains(table.get())) {
+			result.failed(String.format("Not compiled, element of table %s failed", table.get()));
+			return result;
+		}
+		result.start(KDTscResult.Stage.COMPILE);
+		try {
+			result.setMessage(compiler.apply(el));
+			result.passed();
+		} catch (KDHostException | KDHostSqlException | KDHostUnsupportedOperation | KDHostUnableToConnectException e) {
+			result.failed(e.getMessage());
+			table.ifPresent(failedTables::add);
+		}
+		return result;
+	}
+
+	/*
+	 * Table which element belongs to. Names of table related elements start with
+	 * table name (TABLE-COLUMN.COL, TABLE-TRIGGER.TRIG, ...)
+	 */
+	static Optional<String> tableOf(KDHostElement el) {
+		final KDElementTypes type = el.getElementType();
+		if (KDElementTypes.TABLE.equals(type) || KDElementTypes.COMPLETETABLE.equals(type))
+			return Optional.of(el.getElementName());
+		if (type == null || type.getTableNameField().isEmpty())
+			return Optional.empty();
+		return Optional.of(el.getElementName().split("-")[0]);
+	}
+}
@@ -2,6 +2,8 @@ package in.drozd.kdhost;
 
 import java.nio.file.Path;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 import in.drozd.kdhost.utils.KDFileUtils;
@@ -47,6 +49,11 @@ public enum KDElementTypes {
 			return "DBTBL25";
 		}
 
+		@Override
+		protected String getModificationColumns() {
+			return "LTD,TIME";
+		}
+
 		@Override
 		public boolean canCompile() {
 			return true;
@@ -97,6 +104,11 @@ public enum KDElementTypes {
 			return "DBTBL1";
 		}
 
+		@Override
+		protected String getModificationColumns() {
+			return "LTD";
+		}
+
 		@Override
 		public boolean canCompile() {
 			return true;
@@ -143,6 +155,11 @@ public enum KDElementTypes {
 			return "DBTBL1D";
 		}
 
+		@Override
+		protected String getModificationColumns() {
+			return "LTD";
+		}
+
 		@Override
 		public boolean canCompile() {
 			return true;
@@ -263,6 +280,11 @@ public enum KDElementTypes {
 			return "DBTBL22";
 		}
 
+		@Override
+		protected String getModificationColumns() {
+			return "LTD";
+		}
+
 	},
 	DATA {
 		@Override
@@ -302,6 +324,11 @@ public enum KDElementTypes {
 			return "DBTBL5D";
 		}
 
+		@Override
+		protected String getModificationColumns() {
+			return "LTD";
+		}
+
 		@Override
 		public boolean canCompile() {
 			return true;
@@ -334,6 +361,11 @@ public enum KDElementTypes {
 			return "DBTBL13";
 		}
 
+		@Override
+		protected String getModificationColumns() {
+			return "LTD";
+		}
+
 	},
 	ROUTINE {
 		@Override
@@ -373,6 +405,11 @@ public enum KDElementTypes {
 			return "DBTBL4";
 		}
 
+		@Override
+		protected String getModificationColumns() {
+			return "LTD";
+		}
+
 	},
 	SCREEN {
 		@Override
@@ -395,6 +432,11 @@ public enum KDElementTypes {
 			return "DBTBL2";
 		}
 
+		@Override
+		protected String getModificationColumns() {
+			return "LTD";
+		}
+
 		@Override
 		protected String getQueryColumns() {
 			return "SID";
@@ -436,6 +478,11 @@ public enum KDElementTypes {
 		protected String getTableForQuery() {
 			return "DBTBL1F";
 		}
+
+		@Override
+		protected String getModificationColumns() {
+			return "LTD";
+		}
 	},
 	PSLX {
 		@Override
@@ -492,6 +539,11 @@ public enum KDElementTypes {
 			return "DBTBL33";
 		}
 
+		@Override
+		protected String getModificationColumns() {
+			return "LTD,TIME";
+		}
+
 		@Override
 		protected String getQueryColumns() {
 			return "BCHID";
@@ -550,6 +602,11 @@ public enum KDElementTypes {
 			return "DBTBL7";
 		}
 
+		@Override
+		protected String getModificationColumns() {
+			return "LTD,TIME";
+		}
+
 		@Override
 		public boolean canCompile() {
 			return true;
@@ -586,6 +643,11 @@ public enum KDElementTypes {
 			return "DBTBL8";
 		}
 
+		@Override
+		protected String getModificationColumns() {
+			return "LTD";
+		}
+
 		@Override
 		public boolean canCompile() {
 			return true;
@@ -622,6 +684,11 @@ public enum KDElementTypes {
 			return "DBTBL9";
 		}
 
+		@Override
+		protected String getModificationColumns() {
+			return "LTD";
+		}
+
 		@Override
 		public boolean canCompile() {
 			return true;
@@ -673,6 +740,29 @@ public enum KDElementTypes {
 		return false;
 	}
 
+	/**
+	 * Order in which element types have to be compiled. Elements with lower order
+	 * (tables, then their columns, indexes, ...) are compiled before elements that
+	 * use them.
+	 */
+	public int getCompileOrder() {
+		switch (this) {
+		case TABLE:
+		case COMPLETETABLE:
+			return 0;
+		case COLUMN:
+		case INDEX:
+		case JOURNAL:
+		case FKEY:
+			return 1;
+		case TRIGGER:
+		case PSL:
+			return 2;
+		default:
+			return 3;
+		}
+	}
+
 	/**
 	 * Get file extension used by this element type.
 	 * 
@@ -788,6 +878,48 @@ public enum KDElementTypes {
 		return "";
 	}
 
+	/**
+	 * Columns that change when element is modified on host (date/time of last
+	 * change). Empty when not known.
+	 */
+	protected String getModificationColumns() {
+		return "";
+	}
+
+	public boolean hasModificationColumns() {
+		return this.isListable() && !this.getModificationColumns().isBlank();
+	}
+
+	/**
+	 * Only date of last change (LTD) is known, element can change again the same
+	 * day without change of version.
+	 */
+	public boolean hasDateOnlyVersion() {
+		return this.hasModificationColumns() && this.getModificationColumns().indexOf(',') < 0;
+	}
+
+	/**
+	 * Column used to select specific elements in version query. For elements
+	 * stored per table it is table name.
+	 */
+	public String getVersionKeyField() {
+		return this.getTableNameField().isBlank() ? this.getQueryColumns() : this.getTableNameField();
+	}
+
+	/**
+	 * Query for element key columns followed by modification columns, for elements
+	 * with given keys.
+	 */
+	public String getVersionQuery(Collection<String> keys) {
+		if (!this.hasModificationColumns())
+			return null;
+
+		final String values = keys.stream().map(k -> "'" + k.replace("'", "''") + "'")
+				.collect(Collectors.joining(","));
+		return String.format("SELECT %s,%s FROM %s WHERE %s IN (%s) ", this.getQueryColumns(),
+				this.getModificationColumns(), this.getTableForQuery(), this.getVersionKeyField(), values);
+	}
+
 	public static KDElementTypes typeForExtension(String extension) {
 		final String ext = extension.toLowerCase();
 
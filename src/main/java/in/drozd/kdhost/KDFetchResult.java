@@ -0,0 +1,8 @@
+package in.drozd.kdhost;
+
+/**
+ * Result of getting element from host.
+ */
+public enum KDFetchResult {
+	NEW, CHANGED, UNCHANGED, SKIPPED, FAILED
+}
@@ -1,66 +1,224 @@
 package in.drozd.kdhost;
 
-import java.io.FileWriter;
+import java.io.BufferedWriter;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.AtomicMoveNotSupportedException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
 import java.sql.CallableStatement;
 import java.sql.Connection;
-import java.sql.DatabaseMetaData;
 import java.sql.DriverManager;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.sql.Types;
 import java.util.Arrays;
-import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
 import java.util.function.Supplier;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import in.drozd.kdhost.exceptions.KDHostException;
 import in.drozd.kdhost.exceptions.KDHostSqlException;
 import in.drozd.kdhost.exceptions.KDHostUnableToConnectException;
 import in.drozd.kdhost.exceptions.KDHostUnsupportedOperation;
+import in.drozd.kdhost.jfr.KDConnectionEvent;
+import in.drozd.kdhost.jfr.KDElementEvent;
+import in.drozd.kdhost.jfr.KDMrpcEvent;
 import in.drozd.kdhost.utils.KDFileUtils;
+import in.drozd.kdhost.utils.KDStringUtils;
+import jdk.jfr.FlightRecorder;
 
 public class KDHost implements AutoCloseable {
 	private static final String CRLF = "\r\n";
 
 	protected final Logger log;
 
+	private static final String HOST = KDHostProfile.hostAddress();
+
 	// For now they look similar but this one will support much more options later
-	private static final String SANCHEZ_URL = String.format("protocol=jdbc:sanchez/database=%s:SCA$IBS",
-			System.getProperty("KDHOST_HOST", "127.0.0.1:49200"));
-	private static final String FISGLOBAL_URL = String.format("protocol=jdbc:fisglobal/database=%s:SCA$IBS",
-			System.getProperty("KDHOST_HOST", "127.0.0.1:49200"));
+	private static final String SANCHEZ_URL = String.format("protocol=jdbc:sanchez/database=%s:SCA$IBS", HOST);
+	private static final String FISGLOBAL_URL = String.format("protocol=jdbc:fisglobal/database=%s:SCA$IBS", HOST);
 
 	private static final String EMPTY = "";
 
+	// Local information is kept per host (or KDHOST_URL)
+	private final String hostKey = KDHostProfile.hostKey();
+
+	// Charset of elements saved on local drive
+	private static final Charset CHARSET = Charset.forName(System.getProperty("KDHOST_CHARSET", "UTF-8"));
+	private static final int FILE_BUFFER_SIZE = 64 * 1024;
+
 	private static final String SUCCESS = "Success";
 
-	protected Connection conn;
+	// Number of parallel sessions that can be opened to host
+	private static final int POOL_SIZE = Math.max(1, Integer.getInteger("KDHOST_POOL_SIZE", 4));
+
+	private KDHostConnectionPool pool;
+	// Sessions of other host are used (commands served by daemon)
+	private final boolean sharedPool;
+	private ExecutorService executor;
+	// Session leased by current thread - whole element exchange is pinned to it
+	private final ThreadLocal<KDHostSession> leasedSession = new ThreadLocal<>();
+	// Element processed by current thread, reported in MRPC events
+	private final ThreadLocal<String> currentElement = new ThreadLocal<>();
+	// Connection string that worked, so next sessions will not try other drivers.
+	// KDHOST_URL selects other JDBC driver (e.g. host simulator)
+	private volatile String connectionUrl = System.getProperty("KDHOST_URL");
+	private final KDHostMetrics metrics = KDHostMetrics.get();
+
 	private boolean overwriteFiles = false;
+	private boolean incremental = false;
+	private boolean useListingCache = true;
+	private KDListingCache listingCache;
+	private Set<String> catalog;
+	private final Map<String, Boolean> checkedTables = new ConcurrentHashMap<>();
+	private KDHostManifest manifest;
+
+	// Maximum length of encoded code chunk sent in one INITCODE request. Safe
+	// value is used when probing fails.
+	private static final int CODE_WIRE_LIMIT = 1350;
+	// Number of element keys in one version query (refresh)
+	private static final int VERSION_QUERY_BATCH = 200;
+	// Rows fetched from host in one round trip by listing queries
+	private static final int FETCH_SIZE = Math.max(1, Integer.getInteger("KDHOST_FETCH_SIZE", 1000));
+	private static final int CODE_WIRE_PROBE = 16384;
+	private static final String PROFILE_CODE_WIRE_LIMIT = "initcode.wireLimit";
+	// Host accepts token used by EXECCOMP for CHECKOBJ/SAVEOBJ
+	private static final String PROFILE_TOKEN_REUSE = "initcode.tokenReuse";
+
+	private volatile String hostFeatures = null;
+	private volatile int codeWireLimit = 0;
+	private volatile Boolean tokenReuse = null;
+	private KDHostProfile profile;
 
 	public KDHost(Logger log) {
 		this.log = log;
+		this.sharedPool = false;
+	}
+
+	/**
+	 * Host using sessions of other (connected) host, they are not closed with
+	 * this one.
+	 */
+	public KDHost(Logger log, KDHost shared) {
+		this.log = log;
+		this.pool = shared.pool;
+		this.connectionUrl = shared.connectionUrl;
+		this.sharedPool = shared.pool != null;
 	}
 
 	@Override
 	public void close() {
-		try {
-			conn.close();
-		} catch (SQLException e) {
-			logError(() -> e.getMessage());
+		if (executor != null) {
+			executor.shutdownNow();
+		}
+		if (pool != null && !sharedPool) {
+			pool.close();
+		}
+		if (manifest != null) {
+			manifest.save();
 		}
 	}
 
 	public void connectToHost() {
+		connectToHost(true);
+	}
+
+	/**
+	 * @param openSession open first session right away, so connection problems
+	 *                    are reported here and not in the middle of command.
+	 *                    Without it host is not contacted until needed (e.g.
+	 *                    listing answered from cache).
+	 */
+	public void connectToHost(boolean openSession) {
+		// Sessions of shared host are already open
+		if (sharedPool)
+			return;
 		logInfo(() -> "Connecting to host");
+		final String driver = System.getProperty("KDHOST_DRIVER");
+		if (driver != null) {
+			try {
+				Class.forName(driver);
+			} catch (ClassNotFoundException e) {
+				throw new KDHostUnableToConnectException(String.format("Driver %s not found", driver));
+			}
+		}
+		this.pool = new KDHostConnectionPool(this::openSession, POOL_SIZE, log);
+		if (!openSession)
+			return;
+
+		runWithSession(session -> {
+			try {
+				log.log(Level.CONFIG, "Driver version: {0} {1}",
+						new String[] { session.getConnection().getMetaData().getDriverName(),
+								session.getConnection().getMetaData().getDriverVersion() });
+			} catch (SQLException e) {
+				throw new KDHostSqlException(e);
+			}
+		});
+	}
+
+	private KDHostSession openSession() {
+		final KDHostMetrics.Sample sample = metrics.start("CONNECT", 0);
+		final KDConnectionEvent event = recording() ? new KDConnectionEvent("CONNECT") : null;
+		if (event != null)
+			event.begin();
+		try {
+			final KDHostSession session = connect();
+			sample.ok(0);
+			if (event != null)
+				event.ok();
+			return session;
+		} finally {
+			sample.stop();
+			if (event != null)
+				event.commit();
+		}
+	}
+
+	private KDHostSession connect() {
+		if (connectionUrl != null) {
+			try {
+				return new KDHostSession(DriverManager.getConnection(connectionUrl,
+						System.getProperty("KDHOST_USER", "1"), System.getProperty("KDHOST_PASS", "xxx")));
+			} catch (SQLException e) {
+				logError(() -> e.getMessage());
+				throw new KDHostUnableToConnectException(e.getMessage());
+			}
+		}
+
+		Connection conn;
 		try {
 			log.fine("Trying new driver");
 			Class.forName("fisglobal.jdbc.driver.ScDriver").getDeclaredConstructor().newInstance();
@@ -68,6 +226,7 @@ public class KDHost implements AutoCloseable {
 
 			conn = DriverManager.getConnection(FISGLOBAL_URL, System.getProperty("KDHOST_USER", "1"),
 					System.getProperty("KDHOST_PASS", "xxx"));
+			connectionUrl = FISGLOBAL_URL;
 		} catch (Exception e) {
 			try {
 				log.fine("Using fallback driver");
@@ -76,39 +235,242 @@ public class KDHost implements AutoCloseable {
 
 				conn = DriverManager.getConnection(SANCHEZ_URL, System.getProperty("KDHOST_USER", "1"),
 						System.getProperty("KDHOST_PASS", "xxx"));
-
+				connectionUrl = SANCHEZ_URL;
 			} catch (Exception e1) {
 				logError(() -> e1.getMessage());
 				throw new KDHostUnableToConnectException(e1.getMessage());
 			}
 		}
+		return new KDHostSession(conn);
+	}
+
+	/**
+	 * Execute action using host session leased from pool. Nested calls from the
+	 * same thread use the same session.
+	 */
+	public <T> T withSession(Function<KDHostSession, T> action) {
+		final KDHostSession current = leasedSession.get();
+		if (current != null)
+			return action.apply(current);
 
+		if (pool == null)
+			throw new KDHostUnableToConnectException("Not connected to host");
+
+		final KDHostSession session = acquireSession();
+		leasedSession.set(session);
 		try {
-			log.log(Level.CONFIG, "Driver version: {0} {1}",
-					new String[] { conn.getMetaData().getDriverName(), conn.getMetaData().getDriverVersion() });
-		} catch (SQLException e) {
-			throw new KDHostSqlException(e);
+			return action.apply(session);
+		} catch (KDHostSqlException e) {
+			// Don't return broken connection to pool, new one will be opened
+			if (!session.isValid(2))
+				session.markBroken();
+			throw e;
+		} finally {
+			leasedSession.remove();
+			pool.release(session);
+		}
+	}
+
+	private KDHostSession acquireSession() {
+		final long acquireStart = System.nanoTime();
+		final KDConnectionEvent event = recording() ? new KDConnectionEvent("ACQUIRE") : null;
+		if (event != null)
+			event.begin();
+		try {
+			final KDHostSession session = pool.acquire();
+			if (event != null)
+				event.ok();
+			return session;
+		} finally {
+			if (event != null)
+				event.commit();
+			metrics.record("ACQUIRE", System.nanoTime() - acquireStart, 0, 0, true);
 		}
 	}
 
+	public void runWithSession(Consumer<KDHostSession> action) {
+		withSession(session -> {
+			action.accept(session);
+			return null;
+		});
+	}
+
+	/**
+	 * Keep idle host sessions open, broken ones are reopened on next use.
+	 */
+	public void keepAlive(long idleMillis) {
+		if (pool != null)
+			pool.keepAlive(idleMillis);
+	}
+
+	public int getPoolSize() {
+		return POOL_SIZE;
+	}
+
+	private synchronized ExecutorService getExecutor() {
+		if (executor == null) {
+			executor = Executors.newFixedThreadPool(POOL_SIZE, r -> {
+				Thread t = new Thread(r, "kdhost-worker");
+				t.setDaemon(true);
+				return t;
+			});
+		}
+		return executor;
+	}
+
+	/**
+	 * Execute action for all items using all host sessions in parallel. Waits
+	 * until all items are processed. First failure is rethrown at the end.
+	 */
+	public <T> void forEachParallel(Stream<T> items, Consumer<T> action) {
+		// Don't read whole stream into queue - keep just few items per session
+		forEachParallel(items, POOL_SIZE * 2, action);
+	}
+
+	/**
+	 * Same as {@link #forEachParallel(Stream, Consumer)}, but at most given number
+	 * of items is processed at once (and never more than pool size).
+	 */
+	public <T> void forEachParallel(Stream<T> items, int maxInFlight, Consumer<T> action) {
+		// Closes host listings
+		try (items) {
+			forEachParallelUnclosed(items, maxInFlight, action);
+		}
+	}
+
+	private <T> void forEachParallelUnclosed(Stream<T> items, int maxInFlight, Consumer<T> action) {
+		if (POOL_SIZE == 1 || maxInFlight <= 1) {
+			items.forEach(action);
+			return;
+		}
+		final ExecutorService exec = getExecutor();
+		final Semaphore inFlight = new Semaphore(maxInFlight);
+		final AtomicReference<RuntimeException> failure = new AtomicReference<>();
+		items.forEach(item -> {
+			inFlight.acquireUninterruptibly();
+			exec.execute(() -> {
+				try {
+					action.accept(item);
+				} catch (RuntimeException e) {
+					logError(() -> String.format("%s: %s", item, e.getMessage()));
+					failure.compareAndSet(null, e);
+				} finally {
+					inFlight.release();
+				}
+			});
+		});
+		// Wait for last items
+		inFlight.acquireUninterruptibly(maxInFlight);
+		inFlight.release(maxInFlight);
+
+		if (failure.get() != null)
+			throw failure.get();
+	}
+
 	public void setForceOverRide(boolean force) {
 		this.overwriteFiles = force;
 	}
 
-	public void getElement(KDHostElement e) {
+	/*
+	 * In incremental mode all elements are fetched, but only changed ones are
+	 * written on local drive.
+	 */
+	public void setIncremental(boolean incremental) {
+		this.incremental = incremental;
+	}
+
+	/*
+	 * Without cache listings are always fetched from host (and cached for next
+	 * commands).
+	 */
+	public void setUseListingCache(boolean useListingCache) {
+		this.useListingCache = useListingCache;
+	}
+
+	public KDFetchResult getElement(KDHostElement e) {
+		return elementOperation("GET", e, () -> fetchElement(e), result -> result != KDFetchResult.FAILED);
+	}
+
+	/*
+	 * Element operation recorded as JFR event, element name is added to MRPC
+	 * events of this thread.
+	 */
+	private <T> T elementOperation(String operation, KDHostElement el, Supplier<T> action, Predicate<T> success) {
+		final KDElementEvent event = recording() ? new KDElementEvent(operation, el.getFileName()) : null;
+		final String previous = currentElement.get();
+		currentElement.set(el.getFileName());
+		if (event != null)
+			event.begin();
+		try {
+			final T result = action.get();
+			if (event != null)
+				event.finish(String.valueOf(result), success.test(result));
+			return result;
+		} catch (RuntimeException ex) {
+			if (event != null)
+				event.finish(ex.getMessage(), false);
+			throw ex;
+		} finally {
+			if (event != null)
+				event.commit();
+			if (previous == null)
+				currentElement.remove();
+			else
+				currentElement.set(previous);
+		}
+	}
+
+	private KDFetchResult fetchElement(KDHostElement e) {
 		log.info(() -> String.format("Getting element: %s", e));
-		if (!this.overwriteFiles && e.getFilePath().toFile().exists()) {
+		final Path file = e.getFilePath();
+		final boolean exists = file.toFile().exists();
+		if (!this.overwriteFiles && !this.incremental && exists) {
 			log.log(Level.WARNING, "{0} element exists localy, will not be overwriten", e);
-			return;
+			return KDFetchResult.SKIPPED;
+		}
+		final Optional<Download> download = withSession(session -> getFromHost(e));
+		if (download.isEmpty())
+			return KDFetchResult.FAILED;
+
+		final Download content = download.get();
+		final KDHostManifest manifest = getManifest();
+		if (this.incremental && manifest.isUnchanged(file, content.hash, content.size)) {
+			log.log(Level.FINE, "{0} not changed", e);
+			deleteTempFile(content.tempFile);
+			manifest.update(file, content.hash, content.size);
+			return KDFetchResult.UNCHANGED;
 		}
-		getFromHost(e).ifPresent(conent -> saveToFile(e.getFilePath(), conent));
+		moveToFile(content.tempFile, file);
+		manifest.update(file, content.hash, content.size);
+		return exists ? KDFetchResult.CHANGED : KDFetchResult.NEW;
+	}
 
+	/*
+	 * Element content downloaded to temporary file
+	 */
+	private static class Download {
+		private final Path tempFile;
+		private final String hash;
+		private final long size;
+
+		private Download(Path tempFile, String hash, long size) {
+			this.tempFile = tempFile;
+			this.hash = hash;
+			this.size = size;
+		}
 	}
 
-	private Optional<String> getFromHost(KDHostElement e) {
-		Optional<String> returnValue = null;
+	protected synchronized KDHostManifest getManifest() {
+		if (manifest == null) {
+			manifest = new KDHostManifest(KDHostManifest.DEFAULT_LOCATION, hostKey, log);
+		}
+		return manifest;
+	}
+
+	private Optional<Download> getFromHost(KDHostElement e) {
+		Optional<Download> returnValue = null;
 		try {
-			returnValue = this.initObj(e).flatMap(this::retObj);
+			returnValue = this.initObj(e).map(token -> retObj(token, e.getFilePath()));
 
 		} catch (KDHostSqlException exc) {
 			log.severe("Host Communitation problem: " + exc.getMessage());
@@ -117,18 +479,72 @@ public class KDHost implements AutoCloseable {
 		return returnValue;
 	}
 
-	private Optional<String> retObj(String token) {
-		StringBuilder sb = new StringBuilder();
-
-		Optional<String> response;
-		do {
-			response = mrpc121(KDMRPC121Requests.RETOBJ, EMPTY, EMPTY, EMPTY, EMPTY, EMPTY, token, EMPTY);
+	/*
+	 * Pages are written to temporary file next to target file as they come, so
+	 * memory use doesn't depend on element size. Target file is replaced only when
+	 * last page was received.
+	 */
+	private Download retObj(String token, Path target) {
+		KDFileUtils.createDirectoryIfNotExists(target.toAbsolutePath().getParent());
+		final Path tempFile = target.resolveSibling("." + target.getFileName() + ".kdtmp");
+		final MessageDigest digest = KDFileUtils.newSha256();
+
+		try (Writer writer = new BufferedWriter(new OutputStreamWriter(
+				new DigestOutputStream(Channels.newOutputStream(FileChannel.open(tempFile, StandardOpenOption.CREATE,
+						StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)), digest),
+				CHARSET), FILE_BUFFER_SIZE)) {
+			Optional<String> response;
+			long written = 0;
+			long writeNanos = 0;
+			do {
+				response = mrpc121(KDMRPC121Requests.RETOBJ, EMPTY, EMPTY, EMPTY, EMPTY, EMPTY, token, EMPTY);
+				if (response.isPresent() && !response.get().isEmpty()) {
+					final long writeStart = System.nanoTime();
+					// First character is "more pages" flag
+					writer.write(response.get(), 1, response.get().length() - 1);
+					writeNanos += System.nanoTime() - writeStart;
+					written += response.get().length() - 1;
+				}
+			} while (response.orElseGet(() -> EMPTY).startsWith("1"));
+			final long flushStart = System.nanoTime();
+			writer.flush();
+			metrics.record("FILE_WRITE", writeNanos + System.nanoTime() - flushStart, written, 0, true);
+		} catch (IOException ex) {
+			deleteTempFile(tempFile);
+			throw new KDHostException("Cant write file on local drive " + target + " " + ex.getMessage());
+		} catch (RuntimeException ex) {
+			deleteTempFile(tempFile);
+			throw ex;
+		}
 
-			response.map(resp -> resp.substring(1)).ifPresent(sb::append);
+		try {
+			return new Download(tempFile, KDFileUtils.toHex(digest.digest()), Files.size(tempFile));
+		} catch (IOException ex) {
+			deleteTempFile(tempFile);
+			throw new KDHostException("Cant write file on local drive " + target + " " + ex.getMessage());
+		}
+	}
 
-		} while (response.orElseGet(() -> EMPTY).startsWith("1"));
+	private void moveToFile(Path tempFile, Path procFile) {
+		try {
+			try {
+				Files.move(tempFile, procFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(tempFile, procFile, StandardCopyOption.REPLACE_EXISTING);
+			}
+			log.finer("Content saved as: " + procFile.toFile().getAbsoluteFile());
+		} catch (IOException e1) {
+			deleteTempFile(tempFile);
+			throw new KDHostException("Cant write file on local drive " + procFile + " " + e1.getMessage());
+		}
+	}
 
-		return Optional.of(sb.toString());
+	private void deleteTempFile(Path tempFile) {
+		try {
+			Files.deleteIfExists(tempFile);
+		} catch (IOException e) {
+			log.log(Level.WARNING, "Unable to remove temporary file {0}", tempFile);
+		}
 	}
 
 	private Optional<String> initObj(KDHostElement objid) {
@@ -165,7 +581,19 @@ public class KDHost implements AutoCloseable {
 		log.entering("KDhost", "mrpc121",
 				new String[] { request.name(), code, cmpTok, lockFile, objType, objid, token, user });
 
-		try (CallableStatement cstatmt1 = conn.prepareCall("{call mrpc(121,?,?,?,?,?,?,?,?,?)}");) {
+		return withSession(session -> mrpc121(session, request, code, cmpTok, lockFile, objType, objid, token, user));
+	}
+
+	private Optional<String> mrpc121(KDHostSession session, KDMRPC121Requests request, String code, String cmpTok,
+			String lockFile, String objType, String objid, String token, String user) {
+		final long sent = length(code, cmpTok, lockFile, objType, objid, token, user);
+		final KDHostMetrics.Sample sample = metrics.start(request.name(), sent);
+		final KDMrpcEvent event = recording() ? new KDMrpcEvent("121", request.name(), currentElement.get(), sent) : null;
+		if (event != null)
+			event.begin();
+		try {
+			// Cached statement - don't close it
+			final CallableStatement cstatmt1 = session.prepareMrpc("121", 9);
 			cstatmt1.setString(1, request.name()); // REQUEST
 			cstatmt1.setString(2, code); // CODE
 			cstatmt1.setString(3, cmpTok); // CMPTOK
@@ -179,57 +607,165 @@ public class KDHost implements AutoCloseable {
 
 			try (ResultSet rs1 = cstatmt1.executeQuery()) {
 				while (rs1.next()) {
-					return Optional.ofNullable(rs1.getString("CODE"));
+					final String response = rs1.getString("CODE");
+					sample.ok(length(response));
+					if (event != null)
+						event.ok(length(response));
+					return Optional.ofNullable(response);
 				}
 				throw new KDHostUnsupportedOperation("MRPC121 Exception");
 
 			}
 
 		} catch (SQLException e1) {
+			session.evictMrpc("121", 9);
 			throw new KDHostSqlException(e1);
+		} finally {
+			sample.stop();
+			if (event != null)
+				event.commit();
 		}
 	}
 
-	private void saveToFile(Path procFile, String fileContent) {
-		KDFileUtils.createDirectoryIfNotExists(procFile.getParent());
-		try (FileWriter writer = new FileWriter(procFile.toFile());) {
-			writer.write(fileContent);
-			log.finer("Content saved as: " + procFile.toFile().getAbsoluteFile());
-		} catch (IOException e1) {
-			throw new KDHostException("Cant write file on local drive " + procFile + " " + e1.getMessage());
+	// Number of characters sent or received, used by metrics
+	private static long length(String... values) {
+		long length = 0;
+		for (String value : values) {
+			if (value != null)
+				length += value.length();
 		}
+		return length;
 	}
 
 	// TODO: Refactor initCode to return Optional of String
 	private String initCode(byte[] fileContent) {
+		final KDCodeEncoding encoding = codeEncodingFor(fileContent);
+		final int startWireLimit = getCodeWireLimit();
+		int wireLimit = startWireLimit;
+		log.log(Level.FINE, "Code encoding: {0}, chunk limit: {1}", new Object[] { encoding, wireLimit });
 
 		// number of chunks has performance impact
-		final byte[][] chunked = chunk(fileContent, 270);
+		byte[][] chunked = chunk(fileContent, encoding.chunkSize(wireLimit));
+		int sent = 0;
+		// Limit is confirmed when host accepted chunk close to it
+		boolean confirmed = false;
+		// Failed chunk is sent once more before limit is reduced
+		boolean retried = false;
 
 		String token = "";
 		for (int i = 0; i < chunked.length; i++) {
-			StringBuilder sb = new StringBuilder();
-			for (byte b : chunked[i]) {
-				sb.append(String.valueOf(b));
-				sb.append("|");
+			final String code = encoding.encode(chunked[i]);
+			try {
+				token = mrpc121(KDMRPC121Requests.INITCODE, code, token, EMPTY, encoding.marker(), EMPTY, EMPTY,
+						EMPTY)
+								.orElseThrow(() -> new KDHostException(
+										String.format("Empty token returned for %s", KDMRPC121Requests.INITCODE)));
+			} catch (KDHostSqlException e) {
+				// Broken session is not a reason to reduce limit
+				if (wireLimit <= CODE_WIRE_LIMIT || !withSession(session -> session.isValid(2)))
+					throw e;
+				if (!retried) {
+					// Transient failure is not a reason either
+					log.log(Level.FINE, "INITCODE failed, chunk is sent again: {0}", e.getMessage());
+					retried = true;
+					i--;
+					continue;
+				}
+				// Chunk too big for host - back off and send rest in smaller chunks
+				retried = false;
+				wireLimit = Math.max(CODE_WIRE_LIMIT, wireLimit / 2);
+				log.log(Level.FINE, "INITCODE failed, chunk limit reduced to {0}", wireLimit);
+				chunked = chunk(Arrays.copyOfRange(fileContent, sent, fileContent.length),
+						encoding.chunkSize(wireLimit));
+				i = -1;
+				continue;
 			}
-			token = mrpc121(KDMRPC121Requests.INITCODE, sb.toString(), token, EMPTY, EMPTY, EMPTY, EMPTY, EMPTY)
-					.orElseThrow(() -> new KDHostException(
-							String.format("Empty token returned for %s", KDMRPC121Requests.INITCODE)));
+			sent += chunked[i].length;
+			retried = false;
+			confirmed |= code.length() > wireLimit / 2;
 		}
 
+		if (wireLimit != startWireLimit
+				|| (confirmed && getProfile().get(PROFILE_CODE_WIRE_LIMIT, null) == null))
+			saveCodeWireLimit(wireLimit);
+
 		return token;
 	}
 
+	/*
+	 * Chunk limit is probed on first send to host and kept in host profile
+	 */
+	private synchronized int getCodeWireLimit() {
+		if (codeWireLimit == 0) {
+			codeWireLimit = Integer.getInteger("KDHOST_CODE_CHUNK",
+					getProfile().getInt(PROFILE_CODE_WIRE_LIMIT, CODE_WIRE_PROBE));
+		}
+		return codeWireLimit;
+	}
+
+	private synchronized void saveCodeWireLimit(int wireLimit) {
+		codeWireLimit = Math.min(codeWireLimit, wireLimit);
+		getProfile().set(PROFILE_CODE_WIRE_LIMIT, codeWireLimit);
+		getProfile().save();
+	}
+
+	protected synchronized KDListingCache getListingCache() {
+		if (listingCache == null) {
+			listingCache = KDListingCache.forHost(hostKey, log);
+		}
+		return listingCache;
+	}
+
+	protected synchronized KDHostProfile getProfile() {
+		if (profile == null) {
+			profile = KDHostProfile.forHost(hostKey, log);
+		}
+		return profile;
+	}
+
+	private KDCodeEncoding codeEncodingFor(byte[] fileContent) {
+		final String forced = System.getProperty("KDHOST_CODE_ENCODING");
+		if (forced != null && !forced.isBlank()) {
+			final KDCodeEncoding encoding = KDCodeEncoding.forName(forced);
+			if (encoding.canEncode(fileContent))
+				return encoding;
+			return KDCodeEncoding.DECIMAL;
+		}
+		return KDCodeEncoding.select(fileContent, getHostFeatures());
+	}
+
+	/*
+	 * Features are checked once per host connection. Old hosts (PIP) don't
+	 * support GETFWKFTRS, they get default encoding.
+	 */
+	private String getHostFeatures() {
+		if (hostFeatures == null) {
+			try {
+				hostFeatures = String.join(",", getFwkFtrs());
+			} catch (RuntimeException e) {
+				log.log(Level.FINE, "Unable to get framework features: {0}", e.getMessage());
+				hostFeatures = EMPTY;
+			}
+			log.log(Level.CONFIG, "Host features: {0}", hostFeatures);
+		}
+		return hostFeatures;
+	}
+
 	private String initCode(Path fileToSend) {
+		return initCode(readCode(fileToSend));
+	}
 
+	private byte[] readCode(Path fileToSend) {
+		final KDHostMetrics.Sample sample = metrics.start("FILE_READ", 0);
 		try {
-			byte[] fileContent = Files.readAllBytes(fileToSend);
-			return initCode(fileContent);
+			final byte[] code = Files.readAllBytes(fileToSend);
+			sample.ok(code.length);
+			return code;
 		} catch (IOException e) {
 			throw new KDHostException("Can't read input file");
+		} finally {
+			sample.stop();
 		}
-
 	}
 
 	protected byte[][] chunk(byte[] input, int chunkSize) {
@@ -306,6 +842,10 @@ public class KDHost implements AutoCloseable {
 	 * Local copy stays. This is not supported in all host versions (before 76?)
 	 */
 	public String drop(KDHostElement element) {
+		return elementOperation("DROP", element, () -> dropFromHost(element), result -> true);
+	}
+
+	private String dropFromHost(KDHostElement element) {
 		log.info(() -> String.format("Droping: %s", element));
 
 		String result = mrpc121(KDMRPC121Requests.DROPOBJ, "", "", element.getFileName(), EMPTY, EMPTY, EMPTY,
@@ -316,18 +856,24 @@ public class KDHost implements AutoCloseable {
 		if (!"1".equals(result)) {
 			throw new KDHostException(result.substring(2));
 		}
+		invalidateListing(element);
 		return "Drop sucessful";
 	}
 
 	public void sendElement(KDHostElement el, boolean completeTable) {
+		elementOperation("SEND", el, () -> withSession(session -> sendElement(el)), result -> true);
+	}
 
+	private String sendElement(KDHostElement el) {
 		// send to host in loop
-		String token = initCode(el.getFilePath());
+		return saveElement(el, initCode(el.getFilePath()));
+	}
 
+	private String saveElement(KDHostElement el, String token) {
 		final String info = checkObj(el.getFileName(), token);
 		if (!info.startsWith("1")) {
 			log.severe(info);
-			throw new KDHostException("Unable to save file on host: ");
+			throw new KDHostException("Unable to save file on host: " + info);
 
 		} else {
 			log.log(Level.INFO, () -> String.format("%s", info.substring(3)));
@@ -336,20 +882,26 @@ public class KDHost implements AutoCloseable {
 		String retVal = saveObj(el.getFileName(), token);
 		if (!retVal.startsWith("1"))
 			throw new KDHostException("Unable to save file on host");
+		invalidateListing(el);
+		return info.substring(3);
+	}
+
+	public String compileElement(KDHostElement el) {
+		return elementOperation("COMPILE", el, () -> withSession(session -> compile(el)), result -> true);
 	}
 
-	public void compileElement(KDHostElement el) {
+	private String compile(KDHostElement el) {
+		String cmpResult = KDHost.SUCCESS;
 		if (el.getElementType().canCompile()) {
 			log.info("Starting compilation of: " + el.getElementName());
-			String cmpResult;
 			if (!KDElementTypes.BATCH.equals(el.getElementType())) {
 				final String cmpTok = preCompileCheck(el.getFileName());
 				if (cmpTok.startsWith("0"))
 					throw new KDHostException(cmpTok.substring(2));
 				else
 					log.log(Level.FINEST, "Compilation token/information: {0}", cmpTok);
-				cmpResult = this.cmpLink(cmpTok);
-				log.log(Level.INFO, "Compilation result: {0}", cmpResult.substring(2));
+				cmpResult = this.cmpLink(cmpTok).substring(2);
+				log.log(Level.INFO, "Compilation result: {0}", cmpResult);
 			} else {
 				// Custom support for batches
 				mrpc081("DBTBL33", el.getElementName()).ifPresent(
@@ -359,28 +911,49 @@ public class KDHost implements AutoCloseable {
 		} else {
 			log.warning("Element can't be compiled");
 		}
+		return cmpResult;
 	}
 
 	private Optional<String> mrpc081(String table, String element) {
+		return withSession(session -> mrpc081(session, table, element));
+	}
 
-		try (CallableStatement cstatmt1 = conn.prepareCall("{call mrpc(81,?,?,?)}")) {
+	private Optional<String> mrpc081(KDHostSession session, String table, String element) {
+		final KDHostMetrics.Sample sample = metrics.start("MRPC81", length(table, element));
+		final KDMrpcEvent event = recording() ? new KDMrpcEvent("81", table, element, length(table, element)) : null;
+		if (event != null)
+			event.begin();
+		try {
+			final CallableStatement cstatmt1 = session.prepareMrpc("81", 3);
 			cstatmt1.setString(1, table); // REQUEST
 			cstatmt1.setString(2, element); // CODE
 
 			cstatmt1.registerOutParameter(3, Types.VARCHAR, "CODE");
 			try (ResultSet rs1 = cstatmt1.executeQuery()) {
 				if (!rs1.next()) {
+					sample.ok(0);
+					if (event != null)
+						event.ok(0);
 					return Optional.of(KDHost.SUCCESS);
 				} else {
 					throw new KDHostSqlException(String.format("Unable to compile %s", rs1.getString("CODE")));
 				}
 			}
 		} catch (SQLException e) {
+			session.evictMrpc("81", 3);
 			throw new KDHostSqlException(e);
+		} finally {
+			sample.stop();
+			if (event != null)
+				event.commit();
 		}
 	}
 
 	public String dropElement(KDHostElement element) {
+		return elementOperation("DROP", element, () -> dropElementFromHost(element), result -> true);
+	}
+
+	private String dropElementFromHost(KDHostElement element) {
 		log.info(() -> String.format("Droping: %s", element));
 
 		String result = mrpc121(KDMRPC121Requests.DROPOBJ, EMPTY, EMPTY, element.getFileName(), EMPTY, EMPTY, EMPTY,
@@ -391,24 +964,111 @@ public class KDHost implements AutoCloseable {
 		if (!"1".equals(result)) {
 			return result.substring(2);
 		}
+		invalidateListing(element);
 		return "Drop sucessful";
 	}
 
 	public String testElement(KDHostElement el) {
+		return elementOperation("TEST", el, () -> withSession(session -> test(el)), result -> true);
+	}
+
+	private String test(KDHostElement el) {
+		checkCanTest(el);
+		return testCompile(el, initCode(el.getFilePath()));
+	}
+
+	private void checkCanTest(KDHostElement el) {
 		logInfo(() -> "Test compile ");
+		if (!el.getElementType().canCompile())
+			throw new KDHostException("This element type is not supporting test compile");
+	}
 
-		if (el.getElementType().canCompile()) {
-			log.info("Test compile of: " + el.getFileName());
-			final String cmpTok = initCode(el.getFilePath());
-			final String testCompileResult = this.execComp(el.getFileName(), cmpTok);
-			if (!testCompileResult.contains("%PSL-I-LIST: 0 errors, 0 warnings, 0 informational messages")) {
-				throw new KDHostException(testCompileResult);
-			}
-			log.info(testCompileResult);
-			return testCompileResult;
+	private String testCompile(KDHostElement el, String cmpTok) {
+		log.info("Test compile of: " + el.getFileName());
+		final String testCompileResult = this.execComp(el.getFileName(), cmpTok);
+		if (!testCompileResult.contains("%PSL-I-LIST: 0 errors, 0 warnings, 0 informational messages")) {
+			throw new KDHostException(testCompileResult);
+		}
+		log.info(testCompileResult);
+		return testCompileResult;
+	}
+
+	/**
+	 * Test compile, send and compile element in one host session. Errors are
+	 * reported in returned result.
+	 * 
+	 * Code is sent once and its token is used for test compile and save when host
+	 * allows it.
+	 */
+	public KDTscResult tscElement(KDHostElement el) {
+		return elementOperation("TSC", el, () -> tscOnHost(el), KDTscResult::isSuccess);
+	}
+
+	private KDTscResult tscOnHost(KDHostElement el) {
+		final KDTscResult result = new KDTscResult(el.getFilePath());
+		try {
+			runWithSession(session -> tsc(el, result));
+			result.passed();
+		} catch (KDHostException | KDHostSqlException | KDHostUnsupportedOperation | KDHostUnableToConnectException e) {
+			result.failed(e.getMessage());
+		}
+		return result;
+	}
+
+	private void tsc(KDHostElement el, KDTscResult result) {
+		result.start(KDTscResult.Stage.TEST);
+		checkCanTest(el);
+		final byte[] content = readCode(el.getFilePath());
+		final String token = initCode(content);
+		result.setMessage(testCompile(el, token));
+
+		result.start(KDTscResult.Stage.SEND);
+		if (Boolean.FALSE.equals(getTokenReuse())) {
+			result.setMessage(saveElement(el, initCode(content)));
 		} else {
-			throw new KDHostException("This element type is not supporting test compile");
+			result.setMessage(saveElementReusingToken(el, token, content));
+		}
+
+		result.start(KDTscResult.Stage.COMPILE);
+		result.setMessage(compile(el));
+	}
+
+	/*
+	 * First save on host checks if token is still valid after EXECCOMP. When it
+	 * is not, code is sent again and token is not reused anymore for this host.
+	 */
+	private String saveElementReusingToken(KDHostElement el, String token, byte[] content) {
+		final Boolean known = getTokenReuse();
+		try {
+			final String info = saveElement(el, token);
+			if (known == null)
+				setTokenReuse(true);
+			return info;
+		} catch (KDHostException | KDHostSqlException e) {
+			if (known != null)
+				throw e;
+			log.log(Level.FINE, "Save with test compile token failed, sending code again: {0}", e.getMessage());
+		}
+		final String info = saveElement(el, initCode(content));
+		// Failed only with reused token
+		setTokenReuse(false);
+		return info;
+	}
+
+	private Boolean getTokenReuse() {
+		if (tokenReuse == null) {
+			final String reuse = getProfile().get(PROFILE_TOKEN_REUSE, null);
+			if (reuse != null)
+				tokenReuse = Boolean.valueOf(reuse);
 		}
+		return tokenReuse;
+	}
+
+	private void setTokenReuse(boolean reuse) {
+		tokenReuse = reuse;
+		log.log(Level.CONFIG, "Host accepts test compile token for save: {0}", reuse);
+		getProfile().set(PROFILE_TOKEN_REUSE, reuse);
+		getProfile().save();
 	}
 
 	private String execComp(String fileName, String cmpTok) {
@@ -418,6 +1078,10 @@ public class KDHost implements AutoCloseable {
 	}
 
 	public void callMrpc(String mrpcid, String mrpcVersion, String[] mrpcParameters) {
+		runWithSession(session -> callMrpc(session, mrpcid, mrpcVersion, mrpcParameters));
+	}
+
+	private void callMrpc(KDHostSession session, String mrpcid, String mrpcVersion, String[] mrpcParameters) {
 		/*
 		 * Make generic call to any MRPC and display results/error.
 		 * 
@@ -430,9 +1094,12 @@ public class KDHost implements AutoCloseable {
 		String response = "";
 		String errors = "";
 		int numberOfParameters = mrpcParameters.length + 1; // +1 is for response parameter
-		final String mrpcCallString = "{call mrpc(" + mrpcid
-				+ String.join("", Collections.nCopies(numberOfParameters, ",?")) + ")}";
-		try (CallableStatement cs = conn.prepareCall(mrpcCallString);) {
+		final KDHostMetrics.Sample sample = metrics.start("MRPC" + mrpcid, length(mrpcParameters));
+		final KDMrpcEvent event = recording() ? new KDMrpcEvent(mrpcid, EMPTY, currentElement.get(), length(mrpcParameters)) : null;
+		if (event != null)
+			event.begin();
+		try {
+			final CallableStatement cs = session.prepareMrpc(mrpcid, numberOfParameters);
 
 			for (int i = 1; i < numberOfParameters; i++) {
 				cs.setString(i, mrpcParameters[i - 1]);
@@ -444,13 +1111,20 @@ public class KDHost implements AutoCloseable {
 					response = rs1.getString("KDRPCXRESPONSE");
 				}
 			}
+			sample.ok(length(response));
+			if (event != null)
+				event.ok(length(response));
 
 		} catch (SQLException e) {
+			session.evictMrpc(mrpcid, numberOfParameters);
 			response = "";
 			log.severe(e.getMessage());
 			errors = e.getMessage();
 		} finally {
 			// FIXME: Move this out, and return touple with response in client class
+			sample.stop();
+			if (event != null)
+				event.commit();
 		}
 
 		// This is output not logs
@@ -463,6 +1137,14 @@ public class KDHost implements AutoCloseable {
 
 	}
 
+	/*
+	 * First JFR event initializes Flight Recorder (hundreds of ms), events are
+	 * created only when recording was started (at startup or with jcmd)
+	 */
+	private static boolean recording() {
+		return FlightRecorder.isInitialized();
+	}
+
 	private void logInfo(Supplier<String> msgSup) {
 		log.log(Level.INFO, msgSup);
 	}
@@ -471,59 +1153,324 @@ public class KDHost implements AutoCloseable {
 		log.log(Level.SEVERE, msgSup);
 	}
 
+	/**
+	 * Fetch again elements that changed on host since last fetch. Versions of
+	 * elements on host are checked with one query per element type (and batch of
+	 * keys). Elements which version can't be checked are always fetched.
+	 */
+	public void refreshElements(List<KDHostElement> elements, BiConsumer<KDHostElement, KDFetchResult> listener) {
+		setIncremental(true);
+		final Map<KDElementTypes, List<KDHostElement>> byType = elements.stream().collect(
+				Collectors.groupingBy(KDHostElement::getElementType, LinkedHashMap::new, Collectors.toList()));
+
+		// Element and its version on host (empty if not known)
+		final Map<KDHostElement, String> toFetch = new LinkedHashMap<>();
+		byType.forEach((type, typeElements) -> {
+			final Optional<Map<String, String>> versions = getHostVersions(type, typeElements);
+			for (KDHostElement el : typeElements) {
+				if (versions.isEmpty()) {
+					toFetch.put(el, EMPTY);
+					continue;
+				}
+				final String version = versions.get().get(el.getFileName());
+				if (version == null) {
+					log.log(Level.WARNING, "{0} not found on host", el);
+					listener.accept(el, KDFetchResult.FAILED);
+				} else if (el.getFilePath().toFile().exists()
+						&& getManifest().hasHostVersion(el.getFilePath(), version, type.hasDateOnlyVersion())) {
+					listener.accept(el, KDFetchResult.UNCHANGED);
+				} else {
+					toFetch.put(el, version);
+				}
+			}
+		});
+
+		log.log(Level.INFO, "{0} of {1} elements to fetch", new Object[] { toFetch.size(), elements.size() });
+		forEachParallel(toFetch.entrySet().stream(), entry -> {
+			final KDFetchResult result = getElement(entry.getKey());
+			if (result != KDFetchResult.FAILED && !entry.getValue().isEmpty())
+				getManifest().setHostVersion(entry.getKey().getFilePath(), entry.getValue());
+			listener.accept(entry.getKey(), result);
+		});
+	}
+
+	/*
+	 * Map of element file name to version (modification columns) on host. Empty
+	 * when versions can't be checked for this element type.
+	 */
+	private Optional<Map<String, String>> getHostVersions(KDElementTypes type, List<KDHostElement> elements) {
+		if (!type.hasModificationColumns())
+			return Optional.empty();
+
+		final int keyColumns = (int) KDStringUtils.countChar(type.getQueryColumns(), ',') + 1;
+		final int versionColumns = (int) KDStringUtils.countChar(type.getModificationColumns(), ',') + 1;
+		final List<String> keys = elements.stream().map(el -> versionKey(type, el)).distinct()
+				.collect(Collectors.toList());
+
+		try {
+			return Optional.of(withSession(session -> {
+				final Map<String, String> versions = new HashMap<>();
+				for (int from = 0; from < keys.size(); from += VERSION_QUERY_BATCH) {
+					final String qry = type
+							.getVersionQuery(keys.subList(from, Math.min(from + VERSION_QUERY_BATCH, keys.size())));
+					final KDHostMetrics.Sample sample = metrics.start("VERSIONS", qry.length());
+					try (Statement st = session.getConnection().createStatement();
+							ResultSet rs = st.executeQuery(qry)) {
+						while (rs.next()) {
+							final String[] version = new String[versionColumns];
+							for (int i = 0; i < versionColumns; i++) {
+								version[i] = rs.getString(keyColumns + i + 1);
+							}
+							versions.put(new KDHostElement(rs, type).getFileName(), String.join("|", version));
+						}
+						sample.ok(0);
+					} catch (SQLException e) {
+						throw new KDHostSqlException(e);
+					} finally {
+						sample.stop();
+					}
+				}
+				return versions;
+			}));
+		} catch (KDHostSqlException e) {
+			log.log(Level.WARNING, "Unable to check versions of {0} elements, all will be fetched: {1}",
+					new Object[] { type, e.getMessage() });
+			return Optional.empty();
+		}
+	}
+
+	private static String versionKey(KDElementTypes type, KDHostElement el) {
+		if (type.getVersionKeyField().equals(type.getQueryColumns()))
+			return el.getElementName();
+		// Elements stored per table: TABLE-NAME
+		return el.getElementName().split("-")[0];
+	}
+
+	/**
+	 * Elements are read from host while stream is consumed, stream has to be
+	 * closed. Listing keeps one host session until it is read or closed, so with
+	 * one session (KDHOST_POOL_SIZE=1) elements are read before stream is
+	 * returned.
+	 */
 	public Stream<KDHostElement> streamElementsOfType(KDElementTypes elType, String table) {
-		return listElements(elType, table).stream();
+		if (!elType.isListable())
+			return Stream.empty();
+		if (useListingCache) {
+			final Optional<Stream<KDHostElement>> cached = getListingCache().stream(elType, listingTable(elType, table));
+			if (cached.isPresent())
+				return cached.get();
+		}
+		// Session of this thread can't be used by listing and its consumer
+		if (POOL_SIZE == 1 || leasedSession.get() != null)
+			return listElements(elType, table).stream();
+
+		if (pool == null)
+			throw new KDHostUnableToConnectException("Not connected to host");
+		final KDHostSession session = acquireSession();
+		try {
+			return listElements(session, elType, table, failed -> {
+				if (failed && !session.isValid(2))
+					session.markBroken();
+				pool.release(session);
+			});
+		} catch (RuntimeException e) {
+			if (!session.isValid(2))
+				session.markBroken();
+			pool.release(session);
+			throw e;
+		}
 	}
 
 	public Stream<KDHostElement> streamElementsOfType(KDElementTypes elType) {
-		return listElements(elType, null).stream();
+		return streamElementsOfType(elType, null);
+	}
+
+	/**
+	 * Elements of all types, in order of element types.
+	 */
+	public Stream<KDHostElement> streamElementsOfTypes(Stream<KDElementTypes> elTypes) {
+		return elTypes.flatMap(elType -> streamElementsOfType(elType, null));
 	}
 
 	public List<KDHostElement> listElements(KDElementTypes elementType, String table) {
-		log.log(Level.INFO, "Geting list of elements of type: {0}", elementType);
+		if (!elementType.isListable())
+			return new LinkedList<>();
+		if (useListingCache) {
+			final Optional<List<KDHostElement>> cached = getListingCache().get(elementType,
+					listingTable(elementType, table));
+			if (cached.isPresent())
+				return cached.get();
+		}
+		return withSession(session -> {
+			try (Stream<KDHostElement> elements = listElements(session, elementType, table, failed -> {
+			})) {
+				return elements.collect(Collectors.toList());
+			}
+		});
+	}
 
-		List<KDHostElement> elements = new LinkedList<>();
+	// Table is used only by types stored per table
+	private static String listingTable(KDElementTypes elementType, String table) {
+		return table != null && !table.isBlank() && !elementType.getTableNameField().isBlank() ? table : null;
+	}
 
-		if (!elementType.isListable())
-			return elements;
+	private void invalidateListing(KDHostElement el) {
+		if (el.getElementType() != null)
+			getListingCache().invalidate(el.getElementType());
+	}
+
+	/*
+	 * Lazy listing over open result set. Listing is cached when it is read to the
+	 * end. onClose gets information if listing failed.
+	 */
+	private Stream<KDHostElement> listElements(KDHostSession session, KDElementTypes elementType, String table,
+			Consumer<Boolean> onClose) {
+		log.log(Level.INFO, "Geting list of elements of type: {0}", elementType);
+		final Connection conn = session.getConnection();
 		// If query is invalid don't return anything = used when some DQ elements are
 		// obsoleted
-		if (!this.isValidTable(elementType.getTableForQuery()))
-			return elements;
-
-		final String qry = (table != null && !table.isBlank() && !elementType.getTableNameField().isBlank())
-				? elementType.getQuery(table)
+		final String qry = listingTable(elementType, table) != null ? elementType.getQuery(table)
 				: elementType.getQuery();
-		if (!qry.isBlank()) {
-			try (Statement st = conn.createStatement()) {
-				try (ResultSet rs = st.executeQuery(qry)) {
-					while (rs.next()) {
-						KDHostElement he = new KDHostElement(rs, elementType);
-						if (!he.isLiteralColumnName()) {
-							elements.add(he);
-						} else {
-							log.fine("Skipping literal column: " + he.getFileName());
-						}
+		if (!this.isValidTable(conn, elementType.getTableForQuery()) || qry.isBlank()) {
+			onClose.accept(false);
+			return Stream.empty();
+		}
+
+		final KDHostMetrics.Sample sample = metrics.start("LIST", qry.length());
+		final KDListingCache.Writer cacheWriter = getListingCache().writer(elementType, listingTable(elementType, table));
+		Statement st = null;
+		try {
+			st = conn.createStatement();
+			try {
+				st.setFetchSize(FETCH_SIZE);
+			} catch (SQLException e) {
+				log.log(Level.FINE, "Fetch size not supported: {0}", e.getMessage());
+			}
+			final Listing listing = new Listing(st, st.executeQuery(qry), elementType, cacheWriter, sample, onClose);
+			return StreamSupport.stream(listing, false).onClose(listing::close);
+		} catch (SQLException ex) {
+			log.log(Level.SEVERE, () -> String.format("SQL Exception %s %s", elementType, ex.getMessage()));
+			closeQuietly(st);
+			cacheWriter.close();
+			sample.stop();
+			onClose.accept(true);
+			throw new KDHostSqlException(ex);
+		}
+	}
+
+	private void closeQuietly(AutoCloseable closeable) {
+		if (closeable == null)
+			return;
+		try {
+			closeable.close();
+		} catch (Exception e) {
+			log.log(Level.FINE, "Unable to close {0}", e.getMessage());
+		}
+	}
+
+	/*
+	 * Elements read from result set, resources are released when all rows are
+	 * read or stream is closed.
+	 */
+	private class Listing extends Spliterators.AbstractSpliterator<KDHostElement> {
+		private final Statement statement;
+		private final ResultSet rs;
+		private final KDElementTypes elementType;
+		private final KDListingCache.Writer cacheWriter;
+		private final KDHostMetrics.Sample sample;
+		private final Consumer<Boolean> onClose;
+		private boolean closed = false;
+		private boolean failed = false;
+
+		private Listing(Statement statement, ResultSet rs, KDElementTypes elementType,
+				KDListingCache.Writer cacheWriter, KDHostMetrics.Sample sample, Consumer<Boolean> onClose) {
+			super(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL);
+			this.statement = statement;
+			this.rs = rs;
+			this.elementType = elementType;
+			this.cacheWriter = cacheWriter;
+			this.sample = sample;
+			this.onClose = onClose;
+		}
+
+		@Override
+		public boolean tryAdvance(Consumer<? super KDHostElement> action) {
+			if (closed)
+				return false;
+			try {
+				while (rs.next()) {
+					final KDHostElement he = new KDHostElement(rs, elementType);
+					if (!he.isLiteralColumnName()) {
+						cacheWriter.add(he);
+						action.accept(he);
+						return true;
 					}
+					log.fine("Skipping literal column: " + he.getFileName());
 				}
 			} catch (SQLException ex) {
 				log.log(Level.SEVERE, () -> String.format("SQL Exception %s %s", elementType, ex.getMessage()));
+				failed = true;
+				close();
 				throw new KDHostSqlException(ex);
 			}
+			// All rows read - session is released right away
+			sample.ok(0);
+			cacheWriter.commit();
+			close();
+			return false;
+		}
+
+		private void close() {
+			if (closed)
+				return;
+			closed = true;
+			closeQuietly(rs);
+			closeQuietly(statement);
+			cacheWriter.close();
+			sample.stop();
+			onClose.accept(failed);
 		}
-		return elements;
 	}
 
-	private boolean isValidTable(String tableName) {
+	private boolean isValidTable(Connection conn, String tableName) {
 		if (tableName == null)
 			return false;
-		DatabaseMetaData dbm;
-		try {
-			dbm = conn.getMetaData();
-			ResultSet tables = dbm.getTables(null, null, tableName, null);
-			return tables.next();
+		final Set<String> tables = getCatalog(conn);
+		if (!tables.isEmpty())
+			return tables.contains(tableName.toUpperCase());
+		// Catalog not available, check table itself (once)
+		return checkedTables.computeIfAbsent(tableName.toUpperCase(), table -> {
+			try (ResultSet rs = conn.getMetaData().getTables(null, null, tableName, null)) {
+				return rs.next();
+			} catch (SQLException e) {
+				return false;
+			}
+		});
+	}
+
+	/*
+	 * Names of host tables, fetched once and kept with cached listings
+	 */
+	private synchronized Set<String> getCatalog(Connection conn) {
+		if (catalog != null)
+			return catalog;
+		final Optional<Set<String>> cached = useListingCache ? getListingCache().getTables() : Optional.empty();
+		if (cached.isPresent()) {
+			catalog = cached.get();
+			return catalog;
+		}
+		final Set<String> tables = new HashSet<>();
+		try (ResultSet rs = conn.getMetaData().getTables(null, null, "%", null)) {
+			while (rs.next()) {
+				tables.add(rs.getString("TABLE_NAME").toUpperCase());
+			}
 		} catch (SQLException e) {
-			return false;
+			log.log(Level.WARNING, "Unable to read host catalog: {0}", e.getMessage());
+			tables.clear();
 		}
+		if (!tables.isEmpty())
+			getListingCache().putTables(tables);
+		catalog = tables;
+		return catalog;
 	}
 }
@@ -0,0 +1,149 @@
+package in.drozd.kdhost;
+
+import java.util.List;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import in.drozd.kdhost.exceptions.KDHostException;
+
+/**
+ * Bounded pool of host sessions.
+ *
+ * Sessions are opened lazily, so commands that need just one connection will
+ * open just one. When all sessions are leased caller waits for first released.
+ * Sessions idle for longer time are checked before use and reopened when host
+ * closed them.
+ */
+public class KDHostConnectionPool implements AutoCloseable {
+
+	// Idle time after which session is checked before it is used
+	private static final long VALIDATE_AFTER_IDLE_MS = 10_000;
+	private static final int VALIDATION_TIMEOUT_S = 5;
+
+	private final Supplier<KDHostSession> sessionFactory;
+	private final int maxSize;
+	private final Logger log;
+
+	private final Semaphore permits;
+	private final BlockingDeque<KDHostSession> idle = new LinkedBlockingDeque<>();
+	private final List<KDHostSession> opened = new CopyOnWriteArrayList<>();
+
+	private volatile boolean closed = false;
+
+	public KDHostConnectionPool(Supplier<KDHostSession> sessionFactory, int maxSize, Logger log) {
+		if (maxSize < 1)
+			throw new IllegalArgumentException("Pool size has to be greater than 0");
+		this.sessionFactory = sessionFactory;
+		this.maxSize = maxSize;
+		this.log = log;
+		this.permits = new Semaphore(maxSize, true);
+	}
+
+	public int getMaxSize() {
+		return maxSize;
+	}
+
+	public int getOpenedSessions() {
+		return opened.size();
+	}
+
+	public KDHostSession acquire() {
+		if (closed)
+			throw new KDHostException("Connection pool is closed");
+		try {
+			permits.acquire();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new KDHostException("Interrupted while waiting for host connection");
+		}
+
+		// Last used session first - it is the one which is most likely still warm
+		KDHostSession session;
+		while ((session = idle.pollFirst()) != null) {
+			if (session.getIdleMillis() < VALIDATE_AFTER_IDLE_MS || session.isValid(VALIDATION_TIMEOUT_S))
+				return session;
+			log.fine("Host session is not valid anymore, reconnecting");
+			discard(session);
+		}
+
+		try {
+			session = sessionFactory.get();
+		} catch (RuntimeException e) {
+			permits.release();
+			throw e;
+		}
+		opened.add(session);
+		log.log(Level.FINE, "Opened host session {0} of {1}", new Object[] { opened.size(), maxSize });
+		return session;
+	}
+
+	public void release(KDHostSession session) {
+		session.touch();
+		if (closed) {
+			closeSession(session);
+		} else if (session.isBroken()) {
+			log.fine("Host session is broken, it will be reopened when needed");
+			discard(session);
+		} else {
+			idle.offerFirst(session);
+		}
+		permits.release();
+	}
+
+	/**
+	 * Ping idle sessions not used for given time, so host will not close them.
+	 * Sessions that are not valid anymore are removed (and opened again when
+	 * needed).
+	 */
+	public void keepAlive(long idleMillis) {
+		final int idleSessions = idle.size();
+		for (int i = 0; i < idleSessions && !closed; i++) {
+			if (!permits.tryAcquire())
+				return;
+			final KDHostSession session = idle.pollLast();
+			try {
+				if (session == null)
+					return;
+				if (session.getIdleMillis() < idleMillis) {
+					idle.offerLast(session);
+				} else if (session.isValid(VALIDATION_TIMEOUT_S)) {
+					session.touch();
+					idle.offerLast(session);
+				} else {
+					log.fine("Host session is not valid anymore, it will be reopened when needed");
+					discard(session);
+				}
+			} finally {
+				permits.release();
+			}
+		}
+	}
+
+	private void discard(KDHostSession session) {
+		opened.remove(session);
+		closeSession(session);
+	}
+
+	@Override
+	public void close() {
+		closed = true;
+		for (KDHostSession session : opened) {
+			closeSession(session);
+		}
+		opened.clear();
+		idle.clear();
+	}
+
+	private void closeSession(KDHostSession session) {
+		try {
+			session.close();
+		} catch (RuntimeException e) {
+			log.log(Level.SEVERE, () -> String.format("Unable to close host session: %s", e.getMessage()));
+		}
+	}
+}
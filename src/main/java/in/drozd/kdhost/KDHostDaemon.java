@@ -0,0 +1,330 @@
+package in.drozd.kdhost;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.OptionalInt;
+import java.util.Properties;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import in.drozd.kdhost.utils.KDFileUtils;
+
+/**
+ * Long running process keeping host sessions open. Commands of kdhost processes
+ * started in the same directory are executed by daemon and their output is
+ * sent back, so they don't have to connect to host.
+ *
+ * Daemon listens on loopback address, its port and access token are written to
+ * {@code ~/.kdhost/hosts/<host>/daemon.properties} (readable only by owner).
+ * Commands are executed one at a time.
+ */
+public class KDHostDaemon implements AutoCloseable {
+
+	@FunctionalInterface
+	public interface CommandRunner {
+		/**
+		 * Execute command line (output to System.out/System.err), returns exit code
+		 */
+		int run(String[] args);
+	}
+
+	private static final String DAEMON_FILE = "daemon.properties";
+	private static final int CONNECT_TIMEOUT_MS = 500;
+	private static final int REQUEST_TIMEOUT_MS = 5000;
+	private static final int MAX_ARGS = 10000;
+
+	// Requests
+	private static final byte RUN = 1;
+	private static final byte STOP = 2;
+	// Frames of response
+	private static final byte STDOUT = 1;
+	private static final byte STDERR = 2;
+	private static final byte EXIT = 3;
+
+	private final ServerSocket server;
+	private final Path daemonFile;
+	private final String token;
+	private final CommandRunner runner;
+	private final Logger log;
+	private volatile boolean running = true;
+
+	public KDHostDaemon(int port, CommandRunner runner, Logger log) throws IOException {
+		this.runner = runner;
+		this.log = log;
+		this.server = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+		this.daemonFile = daemonFile();
+		final byte[] random = new byte[32];
+		new SecureRandom().nextBytes(random);
+		final StringBuilder sb = new StringBuilder();
+		for (byte b : random) {
+			sb.append(String.format("%02x", b));
+		}
+		this.token = sb.toString();
+		writeDaemonFile();
+		// Ctrl-C doesn't close daemon
+		Runtime.getRuntime().addShutdownHook(new Thread(this::removeDaemonFile, "kdhost-daemon-stop"));
+	}
+
+	public static Path daemonFile() {
+		return KDHostProfile.hostDirectory(KDHostProfile.hostKey()).resolve(DAEMON_FILE);
+	}
+
+	private static String currentDirectory() {
+		return Path.of("").toAbsolutePath().normalize().toString();
+	}
+
+	public int getPort() {
+		return server.getLocalPort();
+	}
+
+	private void writeDaemonFile() throws IOException {
+		final Properties properties = new Properties();
+		properties.setProperty("port", String.valueOf(getPort()));
+		properties.setProperty("token", token);
+		properties.setProperty("directory", currentDirectory());
+		properties.setProperty("pid", String.valueOf(ProcessHandle.current().pid()));
+		KDFileUtils.createDirectoryIfNotExists(daemonFile.getParent());
+		final Path tempFile = daemonFile.resolveSibling("." + DAEMON_FILE);
+		Files.deleteIfExists(tempFile);
+		Files.createFile(tempFile);
+		try {
+			Files.setPosixFilePermissions(tempFile, PosixFilePermissions.fromString("rw-------"));
+		} catch (UnsupportedOperationException e) {
+			log.fine("File permissions not supported, daemon token is readable by other users");
+		}
+		try (Writer writer = Files.newBufferedWriter(tempFile, StandardCharsets.UTF_8)) {
+			properties.store(writer, "KDHost daemon");
+		}
+		Files.move(tempFile, daemonFile, StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	private static Properties readDaemonFile() {
+		final Properties properties = new Properties();
+		final Path file = daemonFile();
+		if (Files.isRegularFile(file)) {
+			try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+				properties.load(reader);
+			} catch (IOException e) {
+				// Daemon not available
+			}
+		}
+		return properties;
+	}
+
+	private void removeDaemonFile() {
+		// Newer daemon could replace file
+		if (!token.equals(readDaemonFile().getProperty("token")))
+			return;
+		try {
+			Files.deleteIfExists(daemonFile);
+		} catch (IOException e) {
+			log.log(Level.WARNING, "Unable to remove {0}", daemonFile);
+		}
+	}
+
+	/**
+	 * Execute client commands until daemon is stopped
+	 */
+	public void serve() {
+		while (running) {
+			try (Socket socket = server.accept()) {
+				handle(socket);
+			} catch (IOException e) {
+				if (running)
+					log.log(Level.WARNING, "Client request failed: {0}", e.getMessage());
+			}
+		}
+	}
+
+	private void handle(Socket socket) throws IOException {
+		socket.setSoTimeout(REQUEST_TIMEOUT_MS);
+		final DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+		final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+		if (!MessageDigest.isEqual(token.getBytes(StandardCharsets.UTF_8),
+				in.readUTF().getBytes(StandardCharsets.UTF_8))) {
+			log.warning("Client with invalid token rejected");
+			return;
+		}
+		final byte request = in.readByte();
+		if (request == STOP) {
+			log.info("Daemon stopped by client");
+			running = false;
+			writeExit(out, 0);
+			return;
+		}
+		final int count = in.readInt();
+		if (request != RUN || count < 0 || count > MAX_ARGS)
+			throw new IOException("Invalid request");
+		final String[] args = new String[count];
+		for (int i = 0; i < count; i++) {
+			args[i] = in.readUTF();
+		}
+		socket.setSoTimeout(0);
+
+		final PrintStream stdout = System.out;
+		final PrintStream stderr = System.err;
+		int exitCode = 1;
+		try (PrintStream clientOut = new PrintStream(new BufferedOutputStream(new Frames(out, STDOUT)), true);
+				PrintStream clientErr = new PrintStream(new BufferedOutputStream(new Frames(out, STDERR)), true)) {
+			System.setOut(clientOut);
+			System.setErr(clientErr);
+			try {
+				exitCode = runner.run(args);
+			} catch (RuntimeException e) {
+				clientErr.println(e.getMessage());
+			}
+		} finally {
+			System.setOut(stdout);
+			System.setErr(stderr);
+		}
+		writeExit(out, exitCode);
+	}
+
+	private static void writeExit(DataOutputStream out, int exitCode) throws IOException {
+		out.writeByte(EXIT);
+		out.writeInt(exitCode);
+		out.flush();
+	}
+
+	/*
+	 * Output of command sent to client, each write in one frame
+	 */
+	private static class Frames extends OutputStream {
+		private final DataOutputStream out;
+		private final byte type;
+
+		Frames(DataOutputStream out, byte type) {
+			this.out = out;
+			this.type = type;
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			write(new byte[] { (byte) b }, 0, 1);
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			if (len == 0)
+				return;
+			synchronized (out) {
+				out.writeByte(type);
+				out.writeInt(len);
+				out.write(b, off, len);
+				out.flush();
+			}
+		}
+
+		@Override
+		public void close() throws IOException {
+			// Socket is closed by daemon
+			flush();
+		}
+	}
+
+	/**
+	 * Execute command by daemon started in current directory. Empty when there is
+	 * no such daemon, command should be executed by this process then.
+	 */
+	public static OptionalInt forward(String[] args, PrintStream stdout, PrintStream stderr) {
+		final Properties properties = readDaemonFile();
+		if (!currentDirectory().equals(properties.getProperty("directory")))
+			return OptionalInt.empty();
+		try (Socket socket = connect(properties)) {
+			final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+			out.writeUTF(properties.getProperty("token", ""));
+			out.writeByte(RUN);
+			out.writeInt(args.length);
+			for (String arg : args) {
+				out.writeUTF(arg);
+			}
+			out.flush();
+			return OptionalInt.of(readResponse(socket, stdout, stderr));
+		} catch (IOException e) {
+			// Daemon is not running
+			return OptionalInt.empty();
+		}
+	}
+
+	private static Socket connect(Properties properties) throws IOException {
+		final Socket socket = new Socket();
+		try {
+			final int port = Integer.parseInt(properties.getProperty("port", "0"));
+			socket.connect(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), CONNECT_TIMEOUT_MS);
+			return socket;
+		} catch (IOException | IllegalArgumentException e) {
+			socket.close();
+			throw new IOException("Daemon not available", e);
+		}
+	}
+
+	/*
+	 * Command was sent, failures from now on are failures of command
+	 */
+	private static int readResponse(Socket socket, PrintStream stdout, PrintStream stderr) {
+		try {
+			final DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+			for (;;) {
+				final byte type = in.readByte();
+				if (type == EXIT) {
+					stdout.flush();
+					stderr.flush();
+					return in.readInt();
+				}
+				final byte[] data = new byte[in.readInt()];
+				in.readFully(data);
+				(type == STDERR ? stderr : stdout).write(data);
+			}
+		} catch (IOException e) {
+			stdout.flush();
+			stderr.println("Connection with kdhost daemon lost: " + e.getMessage());
+			return 1;
+		}
+	}
+
+	/**
+	 * Stop daemon of current host, false when it's not running
+	 */
+	public static boolean stop() {
+		final Properties properties = readDaemonFile();
+		try (Socket socket = connect(properties)) {
+			final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+			out.writeUTF(properties.getProperty("token", ""));
+			out.writeByte(STOP);
+			out.flush();
+			final DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+			return in.readByte() == EXIT;
+		} catch (IOException e) {
+			return false;
+		}
+	}
+
+	@Override
+	public void close() {
+		running = false;
+		removeDaemonFile();
+		try {
+			server.close();
+		} catch (IOException e) {
+			log.log(Level.FINE, "Unable to close daemon socket: {0}", e.getMessage());
+		}
+	}
+}
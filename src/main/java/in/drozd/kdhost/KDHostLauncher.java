@@ -0,0 +1,83 @@
+package in.drozd.kdhost;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.OptionalInt;
+import java.util.Set;
+
+import in.drozd.kdhost.cliutils.KDHostVersionInformation;
+
+/**
+ * Entry point of kdhost. Offline commands ({@code list -l}, {@code list -s},
+ * {@code --version}) are answered without command line parser, logging and
+ * host drivers being loaded. Commands are forwarded to daemon when it runs in
+ * current directory, other commands are executed by {@link KDHostMain}.
+ */
+public final class KDHostLauncher {
+
+	// Commands executed by daemon when it's running in current directory
+	private static final Set<String> FORWARDED_COMMANDS = Set.of("get", "send", "test", "compile", "tsc", "drop",
+			"sql", "mrpc", "list", "refresh");
+	private static final Set<String> LOCAL_COMMANDS = Set.of("daemon", "watch", "extract", "getall", "psl");
+
+	private KDHostLauncher() {
+	}
+
+	public static void main(String[] args) throws IOException {
+		if (runOffline(args))
+			return;
+		if (isForwarded(args)) {
+			final OptionalInt exitCode = KDHostDaemon.forward(args, System.out, System.err);
+			if (exitCode.isPresent())
+				System.exit(exitCode.getAsInt());
+		}
+		KDHostMain.main(args);
+	}
+
+	/*
+	 * Only exact forms of offline commands, anything else is parsed by picocli
+	 */
+	static boolean runOffline(String[] args) throws IOException {
+		if (args.length == 1 && ("--version".equals(args[0]) || "-V".equals(args[0]))) {
+			for (String line : new KDHostVersionInformation().getVersion()) {
+				System.out.println(line);
+			}
+			return true;
+		}
+		if (args.length < 2 || !"list".equals(args[0]))
+			return false;
+		final String[] options = Arrays.copyOfRange(args, 1, args.length);
+		if (!Arrays.stream(options).allMatch(option -> option.matches("-[lsn]+")))
+			return false;
+		final String flags = String.join("", options);
+		if (flags.indexOf('l') < 0 && flags.indexOf('s') < 0)
+			return false;
+		printElementTypes(flags.indexOf('l') >= 0, flags.indexOf('n') >= 0);
+		return true;
+	}
+
+	/*
+	 * First command name decides, commands reading standard input are not
+	 * forwarded
+	 */
+	static boolean isForwarded(String[] args) {
+		if (!Boolean.parseBoolean(System.getProperty("KDHOST_DAEMON", "true")))
+			return false;
+		if (Arrays.asList(args).contains("-"))
+			return false;
+		return Arrays.stream(args).filter(arg -> FORWARDED_COMMANDS.contains(arg) || LOCAL_COMMANDS.contains(arg))
+				.findFirst().map(FORWARDED_COMMANDS::contains).orElse(false);
+	}
+
+	/**
+	 * Element types (only listable ones or all supported), sorted
+	 */
+	static void printElementTypes(boolean listableOnly, boolean justNames) {
+		KDElementTypes.stream().filter(et -> !listableOnly || et.isListable()).sorted().forEach(el -> {
+			if (justNames)
+				System.out.println(el.name().toLowerCase());
+			else
+				System.out.println(String.format("%-15s: %s", el.name().toLowerCase(), el));
+		});
+	}
+}
@@ -1,6 +1,14 @@
 package in.drozd.kdhost;
 
+import java.io.BufferedWriter;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.FileSystems;
 import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
@@ -13,23 +21,37 @@ import java.nio.file.WatchService;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.sql.Connection;
 import java.sql.ResultSet;
-import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.Arrays;
+import java.util.EnumMap;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
 import java.util.function.Supplier;
 import java.util.logging.ConsoleHandler;
 import java.util.logging.Handler;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 import java.util.stream.Stream;
 
 import com.neva.commons.gitignore.GitIgnore;
 
 import in.drozd.kdhost.cliutils.KDElementTypeConverter;
 import in.drozd.kdhost.exceptions.KDHostException;
+import in.drozd.kdhost.exceptions.KDHostIOException;
+import in.drozd.kdhost.exceptions.KDHostSqlException;
+import in.drozd.kdhost.exceptions.KDHostUnsupportedOperation;
+import in.drozd.kdhost.utils.KDFileUtils;
 import in.drozd.kdhost.utils.KDHostLogFormatter;
 import picocli.CommandLine;
 import picocli.CommandLine.Command;
@@ -48,17 +70,34 @@ public class KDHostMain implements Runnable {
 
 	protected static final Logger log = Logger.getLogger(KDHostMain.class.getName());
 
+	private static final int OUTPUT_BUFFER_SIZE = 64 * 1024;
+
+	// Host of daemon executing this command
+	private KDHost daemonHost = null;
+
 	// For WATCH command
 	private WatchService watcher = null;
-	private GitIgnore gitIgnore = null;
+	private volatile GitIgnore gitIgnore = null;
+	private KDWatchEventPipeline pipeline = null;
 
 	private Map<WatchKey, Path> keys = null;
 
 	@Option(names = { "--verbosity", "-v" }, description = "Verbosity level, default: ${DEFAULT-VALUE}")
 	String logLevel = DEFAULT_LOG_LEVEL_STR;
 
+	@Option(names = "--stats", description = "Print statistics of host calls when command finishes")
+	boolean stats = false;
+
+	@Option(names = "--stats-json", description = "Write statistics of host calls as JSON to FILE when command finishes", paramLabel = "FILE")
+	Path statsJson = null;
+
+	/**
+	 * Commands are started by {@link KDHostLauncher}, which answers offline
+	 * commands and forwards commands to daemon.
+	 */
 	public static void main(String[] args) {
 		CommandLine cmd = new CommandLine(new KDHostMain());
+		cmd.setCaseInsensitiveEnumValuesAllowed(true);
 		cmd.parseWithHandlers(new CommandLine.RunAll().andExit(0), CommandLine.defaultExceptionHandler().andExit(1),
 				args);
 	}
@@ -66,41 +105,131 @@ public class KDHostMain implements Runnable {
 	@Override
 	public void run() {
 		setupLogger(this.logLevel);
+		// Subcommands exit JVM, statistics are printed by shutdown hook
+		if (daemonHost == null && (stats || statsJson != null))
+			Runtime.getRuntime().addShutdownHook(new Thread(this::printStats, "kdhost-stats"));
+	}
+
+	/*
+	 * Command of client executed by daemon, using host sessions of daemon
+	 */
+	static int runServed(KDHost host, String[] args) {
+		final KDHostMain main = new KDHostMain();
+		main.daemonHost = host;
+		final CommandLine cmd = new CommandLine(main);
+		cmd.setCaseInsensitiveEnumValuesAllowed(true);
+		final int[] exitCode = { 0 };
+		// Logger is configured by command
+		final Handler[] handlers = log.getHandlers();
+		final Level level = log.getLevel();
+		KDHostMetrics.get().reset();
+		try {
+			cmd.parseWithHandlers(new CommandLine.RunAll(), new CommandLine.DefaultExceptionHandler<List<Object>>() {
+				@Override
+				protected void exit(int code) {
+					// Daemon keeps running
+					exitCode[0] = code;
+				}
+			}.andExit(1), args);
+			if (main.stats || main.statsJson != null)
+				main.printStats();
+		} finally {
+			for (Handler h : log.getHandlers()) {
+				log.removeHandler(h);
+			}
+			for (Handler h : handlers) {
+				log.addHandler(h);
+			}
+			log.setLevel(level);
+		}
+		return exitCode[0];
+	}
+
+	/*
+	 * Commands executed by daemon use its host sessions
+	 */
+	private KDHost newHost() {
+		return daemonHost == null ? new KDHost(log) : new KDHost(log, daemonHost);
+	}
+
+	private void printStats() {
+		final KDHostMetrics metrics = KDHostMetrics.get();
+		if (stats)
+			printCommandError(metrics.toTable());
+		if (statsJson != null) {
+			try {
+				Files.writeString(statsJson, metrics.toJson() + System.lineSeparator());
+			} catch (IOException e) {
+				printCommandError(String.format("Unable to write statistics to %s: %s", statsJson, e.getMessage()));
+			}
+		}
 	}
 
 	@Command(description = "Send element(s) to host", mixinStandardHelpOptions = true, versionProvider = in.drozd.kdhost.cliutils.KDHostVersionInformation.class)
 	void send(@Option(names = {
 			"-c" }, description = "For Tables send table definition with columns. Default value: ${DEFAULT-VALUE}", defaultValue = "false") boolean completeTable,
+			@Option(names = "--jobs", description = "Number of elements sent in parallel, default: KDHOST_POOL_SIZE", defaultValue = "0", paramLabel = "N") int jobs,
 			@Parameters(paramLabel = "PATH") Path[] paths) throws Exception {
 
-		try (KDHost host = new KDHost(log)) {
+		try (KDHost host = newHost()) {
 			host.connectToHost();
-			for (Path el : paths) {
-				host.sendElement(new KDHostElement(el), completeTable);
-			}
-
+			final LongAdder sentFiles = new LongAdder();
+			final LongAdder sentBytes = new LongAdder();
+			final List<Path> failed = new CopyOnWriteArrayList<>();
+			final long start = System.nanoTime();
+			// Files are sent while directories are still walked
+			host.forEachParallel(Stream.of(paths).flatMap(this::sendFiles), jobs > 0 ? jobs : host.getPoolSize(),
+					file -> {
+						try {
+							host.sendElement(new KDHostElement(file), completeTable);
+							sentFiles.increment();
+							sentBytes.add(file.toFile().length());
+						} catch (KDHostException | KDHostSqlException | KDHostUnsupportedOperation e) {
+							log.log(Level.SEVERE, () -> String.format("Unable to send %s: %s", file, e.getMessage()));
+							failed.add(file);
+						}
+					});
+			failed.forEach(file -> printCommandError(String.format("Not sent: %s", file)));
+			final double seconds = Math.max(System.nanoTime() - start, 1) / 1e9;
+			final double kiloBytes = sentBytes.sum() / 1024.0;
+			printCommandResult(String.format("Sent: %d files, %.1f KB in %.1f s (%.1f files/s, %.1f KB/s), Failed: %d",
+					sentFiles.sum(), kiloBytes, seconds, sentFiles.sum() / seconds, kiloBytes / seconds,
+					failed.size()));
+			if (!failed.isEmpty())
+				throw new KDHostException(String.format("%d elements not sent", failed.size()));
 		}
 	}
 
+	/*
+	 * Files given explicitly are sent as they are, directories are walked
+	 * recursively and filtered with .gitignore
+	 */
+	private Stream<Path> sendFiles(Path path) {
+		if (!Files.isDirectory(path))
+			return Stream.of(path);
+		final GitIgnore ignore = new GitIgnore(path.toAbsolutePath().normalize().toFile());
+		return walkElementFiles(path).filter(file -> !ignore.isExcluded(file.toAbsolutePath().normalize().toFile()));
+	}
+
 	@Command(description = "Compile elements on host", mixinStandardHelpOptions = true, versionProvider = in.drozd.kdhost.cliutils.KDHostVersionInformation.class)
 	void compile(
+			@Option(names = "--jobs", description = "Number of elements compiled in parallel (limited by KDHOST_POOL_SIZE), default: ${DEFAULT-VALUE}", defaultValue = "1", paramLabel = "N") int jobs,
 			@Parameters(index = "0..*", description = "Files to compile", arity = "0..*", paramLabel = "ELEMENT") Path[] elements)
 			throws Exception {
-		try (KDHost host = new KDHost(log)) {
+		if (elements == null)
+			return;
+		try (KDHost host = newHost()) {
 			host.connectToHost();
-			for (Path el : elements) {
-				// TODO: compile element should return string with result of the compilation
-				// with printCommandResult
-				host.compileElement(new KDHostElement(el));
-			}
-
+			final List<KDHostElement> toCompile = Stream.of(elements).map(KDHostElement::new)
+					.collect(Collectors.toList());
+			printTscResults(new KDCompileScheduler(host, jobs, log).compile(toCompile));
 		}
 	}
 
 	@Command(description = "Drop elements from host", mixinStandardHelpOptions = true, versionProvider = in.drozd.kdhost.cliutils.KDHostVersionInformation.class)
 	void drop(@Parameters(description = "elements to drop", paramLabel = "ELEMENT") String[] elements)
 			throws Exception {
-		try (KDHost host = new KDHost(log)) {
+		try (KDHost host = newHost()) {
 			host.connectToHost();
 			for (String el : elements) {
 				this.printCommandResult(host.dropElement(new KDHostElement(el)));
@@ -111,16 +240,19 @@ public class KDHostMain implements Runnable {
 
 	@Command(name = "extract", description = "Extract environment", mixinStandardHelpOptions = true, versionProvider = in.drozd.kdhost.cliutils.KDHostVersionInformation.class, hidden = true)
 	void extractEnv(
-			@Option(names = "-f", description = "Override file if it exist. Default value: ${DEFAULT-VALUE}", defaultValue = "false") boolean force)
+			@Option(names = "-f", description = "Override file if it exist. Default value: ${DEFAULT-VALUE}", defaultValue = "false") boolean force,
+			@Option(names = "-i", description = "Write only changed elements and report changes. Default value: ${DEFAULT-VALUE}", defaultValue = "false") boolean incremental,
+			@Option(names = "--no-cache", description = "Fetch element lists from host, don't use cached lists", defaultValue = "false") boolean noCache)
 			throws Exception {
 		// Step 1 - Download listable elements
-		try (KDHost host = new KDHost(log)) {
+		try (KDHost host = newHost()) {
 			host.connectToHost();
+			host.setUseListingCache(!noCache);
 			if (force) {
 				host.setForceOverRide(force);
 			}
-			KDElementTypes.stream().filter(et -> et.isListable()).flatMap(host::streamElementsOfType).parallel()
-					.forEach(host::getElement);
+			fetchElements(host, host.streamElementsOfTypes(KDElementTypes.stream().filter(et -> et.isListable())),
+					incremental);
 		}
 
 	}
@@ -129,21 +261,61 @@ public class KDHostMain implements Runnable {
 	void getall(
 			@Option(names = "-f", description = "Override file if it exist. Default value: ${DEFAULT-VALUE}", defaultValue = "false") boolean force,
 			@Option(names = "-r", description = "Download filer/record elements. Default value: ${DEFAULT-VALUE}", defaultValue = "false", hidden = true) boolean record,
+			@Option(names = "-i", description = "Write only changed elements and report changes. Default value: ${DEFAULT-VALUE}", defaultValue = "false") boolean incremental,
+			@Option(names = "--no-cache", description = "Fetch element lists from host, don't use cached lists", defaultValue = "false") boolean noCache,
 			@Parameters(paramLabel = "ELEMENT", index = "0..*", arity = "1..*", description = "Element(s) to get from host") List<String> elements) {
 
-		try (KDHost host = new KDHost(log)) {
+		try (KDHost host = newHost()) {
 			host.connectToHost();
+			host.setUseListingCache(!noCache);
 			if (force) {
 				host.setForceOverRide(force);
 			}
 			if (elements != null && !elements.isEmpty()) {
-				elements.stream().map(s -> KDElementTypes.typeForName(s)).flatMap(host::streamElementsOfType)
-						.forEach(host::getElement);
+				fetchElements(host,
+						host.streamElementsOfTypes(elements.stream().map(s -> KDElementTypes.typeForName(s))),
+						incremental);
 			}
 		}
 
 	}
 
+	private void fetchElements(KDHost host, Stream<KDHostElement> elements, boolean incremental) {
+		if (!incremental) {
+			host.forEachParallel(elements, host::getElement);
+			return;
+		}
+		host.setIncremental(true);
+		final Map<KDFetchResult, LongAdder> results = newFetchResults();
+		try {
+			host.forEachParallel(elements, el -> reportFetchResult(results, el, host.getElement(el)));
+		} finally {
+			printFetchSummary(results);
+		}
+	}
+
+	private Map<KDFetchResult, LongAdder> newFetchResults() {
+		final Map<KDFetchResult, LongAdder> results = new EnumMap<>(KDFetchResult.class);
+		for (KDFetchResult result : KDFetchResult.values()) {
+			results.put(result, new LongAdder());
+		}
+		return results;
+	}
+
+	private void reportFetchResult(Map<KDFetchResult, LongAdder> results, KDHostElement el, KDFetchResult result) {
+		results.get(result).increment();
+		if (result == KDFetchResult.NEW)
+			printCommandResult("A " + el.getFilePath());
+		else if (result == KDFetchResult.CHANGED)
+			printCommandResult("M " + el.getFilePath());
+	}
+
+	private void printFetchSummary(Map<KDFetchResult, LongAdder> results) {
+		printCommandResult(String.format("New: %d, Changed: %d, Unchanged: %d, Failed: %d",
+				results.get(KDFetchResult.NEW).sum(), results.get(KDFetchResult.CHANGED).sum(),
+				results.get(KDFetchResult.UNCHANGED).sum(), results.get(KDFetchResult.FAILED).sum()));
+	}
+
 	@Command(description = "Get elements from host", mixinStandardHelpOptions = true, versionProvider = in.drozd.kdhost.cliutils.KDHostVersionInformation.class)
 	void get(
 			@Option(names = "-f", description = "Override file if it exist. Default value: ${DEFAULT-VALUE}", defaultValue = "false") boolean force,
@@ -151,7 +323,7 @@ public class KDHostMain implements Runnable {
 			throws Exception {
 		startingCommand(() -> "Get command");
 
-		try (KDHost host = new KDHost(log)) {
+		try (KDHost host = newHost()) {
 			host.connectToHost();
 			if (force) {
 				host.setForceOverRide(force);
@@ -175,7 +347,7 @@ public class KDHostMain implements Runnable {
 			@Option(names = "-r", description = "Repeat call, default: ${DEFAULT-VALUE}\"", paramLabel = "N", defaultValue = "1") int repeat,
 			@Parameters(index = "0", arity = "1", description = "MRPC ID", paramLabel = "MRPC_ID") String mrpcid,
 			@Parameters(index = "1..*", arity = "0..*", description = "MRPC parameters", paramLabel = "PARAMETERS") String[] parameters) {
-		try (KDHost host = new KDHost(log)) {
+		try (KDHost host = newHost()) {
 			host.connectToHost();
 			// TODO: callMRPC should return something that will be printed
 			long start = System.currentTimeMillis();
@@ -195,32 +367,28 @@ public class KDHostMain implements Runnable {
 			@Option(names = "-s", description = "List supported element types", defaultValue = "false") boolean listAllTypes,
 			@Option(names = "-n", description = "Show element names", defaultValue = "false") boolean asNames,
 			@Option(names = "-t", description = "List subelement of specific table.", paramLabel = "TABLE-NAME", defaultValue = "") String table,
+			@Option(names = "--no-cache", description = "Fetch element lists from host, don't use cached lists", defaultValue = "false") boolean noCache,
 			@Parameters(index = "0..*", arity = "0..*", description = "Element types to list from host", paramLabel = "ELEMENT-TYPES", converter = KDElementTypeConverter.class) List<KDElementTypes> elementTypes)
 			throws Exception {
 
 		startingCommand(() -> "List command");
 		// Offline actions
-		if (listListableTypes) {
-			KDElementTypes.stream().filter(et -> et.isListable()).sorted().forEach(el -> printElementType(el, asNames));
-			exitingCommand(() -> "List command");
-			return;
-		}
-
-		if (listAllTypes) {
-			KDElementTypes.stream().sorted().forEach(el -> printElementType(el, asNames));
+		if (listListableTypes || listAllTypes) {
+			KDHostLauncher.printElementTypes(listListableTypes, asNames);
 			exitingCommand(() -> "List command");
 			return;
 		}
-		try (KDHost host = new KDHost(log)) {
-			host.connectToHost();
+		try (KDHost host = newHost()) {
+			// Host is contacted only when list is not cached
+			host.connectToHost(false);
+			host.setUseListingCache(!noCache);
 			if (elementTypes != null && !elementTypes.isEmpty()) {
 				elementTypes.stream().flatMap(elType -> host.streamElementsOfType(elType, table))
 						.forEach(el -> printElements(el, asNames));
 			} else {
 
 				if (all) {
-					KDElementTypes.stream().filter(et -> et.isListable())
-							.flatMap(elType -> host.streamElementsOfType(elType))
+					host.streamElementsOfTypes(KDElementTypes.stream().filter(et -> et.isListable()))
 							.forEach(el -> printElements(el, asNames));
 				} else if (!table.isBlank()) {
 					Stream.of(KDElementTypes.TABLE, KDElementTypes.COLUMN)
@@ -236,54 +404,280 @@ public class KDHostMain implements Runnable {
 
 	}
 
-	@Command(description = "Refresh elements from host", mixinStandardHelpOptions = true, versionProvider = in.drozd.kdhost.cliutils.KDHostVersionInformation.class, hidden = true)
+	@Command(description = "Refresh elements from host", mixinStandardHelpOptions = true, versionProvider = in.drozd.kdhost.cliutils.KDHostVersionInformation.class)
 	void refresh(
 			@Parameters(index = "0..*", description = "Elements to refresh", arity = "1..*", paramLabel = "ELEMENT") Path[] elements) {
-		// TODO: IMplement refresh command
+		startingCommand(() -> "Refresh command");
+		final List<KDHostElement> localElements = Stream.of(elements).flatMap(this::walkElementFiles)
+				.map(KDHostElement::new).collect(Collectors.toList());
+
+		try (KDHost host = newHost()) {
+			host.connectToHost();
+			final Map<KDFetchResult, LongAdder> results = newFetchResults();
+			try {
+				host.refreshElements(localElements, (el, result) -> reportFetchResult(results, el, result));
+			} finally {
+				printFetchSummary(results);
+			}
+		}
+		exitingCommand(() -> "Refresh command");
+	}
+
+	/*
+	 * Element files from path, directories are walked recursively
+	 */
+	private Stream<Path> walkElementFiles(Path path) {
+		Stream<Path> files = Stream.of(path);
+		if (Files.isDirectory(path)) {
+			try {
+				files = Files.walk(path).filter(Files::isRegularFile);
+			} catch (IOException e) {
+				throw new KDHostIOException(e);
+			}
+		}
+		return files.filter(file -> KDFileUtils.getExtension(file).isPresent())
+				.filter(file -> KDElementTypes.typeForFileName(file.getFileName().toString()) != KDElementTypes.SFILES);
 	}
 
 	@Command(description = "Execute sql code on host", mixinStandardHelpOptions = true, versionProvider = in.drozd.kdhost.cliutils.KDHostVersionInformation.class)
 	void sql(
-			@Option(names = "-s", description = "Character used to separate columns, default: ${DEFAULT-VALUE}", defaultValue = "|", paramLabel = "SEPARATOR") String separator,
+			@Option(names = "-s", description = "Character used to separate columns (PLAIN format), default: ${DEFAULT-VALUE}", defaultValue = "|", paramLabel = "SEPARATOR") String separator,
+			@Option(names = "--format", description = "Output format: ${COMPLETION-CANDIDATES}, default: ${DEFAULT-VALUE}", defaultValue = "PLAIN", paramLabel = "FORMAT") KDQueryWriter.Format format,
+			@Option(names = { "-o", "--output" }, description = "Write result to FILE instead of standard output", paramLabel = "FILE") Path output,
+			@Option(names = "--fetch-size", description = "Rows fetched from host in one round trip, default: ${DEFAULT-VALUE}", defaultValue = "1000", paramLabel = "N") int fetchSize,
+			@Option(names = "--partition-by", description = "Split SELECT into key ranges of COLUMN read in parallel", paramLabel = "COLUMN") String partitionBy,
+			@Option(names = "--partitions", description = "Number of partitions, default: host pool size", defaultValue = "0", paramLabel = "N") int partitions,
+			@Option(names = "--bounds", description = "Partition bounds (sorted key values), by default numeric key range is split evenly", split = ",", paramLabel = "VALUE") List<String> bounds,
+			@Option(names = "--split-output", description = "Write every partition to its own file (FILE.001.ext, ...)", defaultValue = "false") boolean splitOutput,
+			@Option(names = "--load", description = "Execute parameterized INSERT/UPDATE for rows of FILE (- for standard input) in --format", paramLabel = "FILE") Path load,
+			@Option(names = "--columns", description = "Columns of loaded rows bound to parameters, default: all columns in input order", split = ",", paramLabel = "COLUMN") List<String> columns,
+			@Option(names = "--batch-size", description = "Rows sent to host in one batch, default: ${DEFAULT-VALUE}", defaultValue = "500", paramLabel = "N") int batchSize,
+			@Option(names = "--jobs", description = "Number of batches loaded in parallel (limited by KDHOST_POOL_SIZE), default: ${DEFAULT-VALUE}", defaultValue = "1", paramLabel = "N") int jobs,
 			@Parameters(index = "0..*", description = "SQL query to execute", paramLabel = "SQL QUERY") String[] sqlQry) {
-		try (KDHost host = new KDHost(log)) {
+		if (splitOutput && output == null)
+			throw new KDHostException("--split-output requires --output");
+		if (load != null && (output != null || partitionBy != null))
+			throw new KDHostException("--load can't be used with --output or --partition-by");
+		try (KDHost host = newHost()) {
 			host.connectToHost();
-			this.executeQuery(host.conn, String.join(" ", sqlQry), separator);
+			if (load != null) {
+				loadRows(host, String.join(" ", sqlQry), load, format, separator, columns, Math.max(1, batchSize),
+						jobs);
+				return;
+			}
+			if (partitionBy != null) {
+				exportPartitioned(host, new KDPartitionedQuery(String.join(" ", sqlQry), partitionBy), bounds,
+						partitions > 0 ? partitions : host.getPoolSize(), fetchSize, format, separator, output,
+						splitOutput);
+				return;
+			}
+			host.withSession(session -> {
+				this.executeQuery(session.getConnection(), String.join(" ", sqlQry), fetchSize, format, separator,
+						output);
+				return null;
+			});
+
+		}
+	}
 
+	private void executeQuery(Connection connection, String sqlQueryString, int fetchSize,
+			KDQueryWriter.Format format, String separator, Path output) {
+		try {
+			writeQuery(connection, sqlQueryString, fetchSize, format, separator, output, true);
+		} catch (SQLException e) {
+			log.severe("Unable to execute SQL Query: " + e.getMessage());
+		} catch (IOException e) {
+			throw new KDHostIOException(e);
 		}
 	}
 
-	private void executeQuery(Connection connection, String sqlQueryString, String separator) {
+	private long writeQuery(Connection connection, String sqlQueryString, int fetchSize, KDQueryWriter.Format format,
+			String separator, Path output, boolean header) throws SQLException, IOException {
 		log.log(Level.INFO, "Executing: {0}", sqlQueryString);
-		try (Statement stmt = connection.createStatement(); ResultSet rs = stmt.executeQuery(sqlQueryString)) {
-
-			ResultSetMetaData rsmd = rs.getMetaData();
-			int columnsNumber = rsmd.getColumnCount();
-			for (int i = 1; i <= columnsNumber; i++) {
-				System.out.format("%s", rsmd.getColumnName(i));
-				if (i != columnsNumber)
-					System.out.print(separator);
-			}
-			System.out.print("\n");
-			while (rs.next()) {
-				for (int i = 1; i <= columnsNumber; i++) {
-					System.out.format("%s", rs.getString(i));
-					if (i != columnsNumber)
-						System.out.print(separator);
+		try (Statement stmt = connection.createStatement()) {
+			if (fetchSize > 0)
+				stmt.setFetchSize(fetchSize);
+			try (ResultSet rs = stmt.executeQuery(sqlQueryString)) {
+				final Writer out = openOutput(output);
+				try {
+					final long rows = new KDQueryWriter(format, separator, out).write(rs, header);
+					log.log(Level.INFO, "Rows: {0}", rows);
+					return rows;
+				} finally {
+					// Standard output is not closed
+					if (output == null)
+						out.flush();
+					else
+						out.close();
 				}
-				System.out.println("");
 			}
+		}
+	}
+
+	/*
+	 * Partitions are read in parallel (one host session each) into partition
+	 * files, which are merged in key order unless split output is requested
+	 */
+	private void exportPartitioned(KDHost host, KDPartitionedQuery query, List<String> bounds, int partitions,
+			int fetchSize, KDQueryWriter.Format format, String separator, Path output, boolean splitOutput) {
+		final List<String> splits = bounds != null && !bounds.isEmpty() ? bounds
+				: host.withSession(session -> probeBounds(session.getConnection(), query, partitions));
+		final List<String> queries = query.partitionQueries(splits);
+		final Path[] files = new Path[queries.size()];
+		final LongAdder rows = new LongAdder();
+		final long start = System.nanoTime();
+		try {
+			for (int i = 0; i < files.length; i++) {
+				if (splitOutput)
+					files[i] = partitionFile(output, i + 1);
+				else if (output != null)
+					files[i] = Files.createTempFile(output.toAbsolutePath().getParent(), ".kdhost-part", ".tmp");
+				else
+					files[i] = Files.createTempFile(".kdhost-part", ".tmp");
+			}
+			host.forEachParallel(IntStream.range(0, queries.size()).boxed(), queries.size(),
+					i -> host.runWithSession(session -> {
+						try {
+							rows.add(writeQuery(session.getConnection(), queries.get(i), fetchSize, format, separator,
+									files[i], splitOutput || i == 0));
+						} catch (SQLException e) {
+							throw new KDHostSqlException(e);
+						} catch (IOException e) {
+							throw new KDHostIOException(e);
+						}
+					}));
+			if (!splitOutput)
+				mergeFiles(files, output);
+		} catch (IOException e) {
+			throw new KDHostIOException(e);
+		} finally {
+			if (!splitOutput)
+				deleteFiles(files);
+		}
+		log.log(Level.INFO, "Exported {0} rows in {1} partitions in {2} ms",
+				new Object[] { rows.sum(), queries.size(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) });
+	}
 
+	private List<String> probeBounds(Connection connection, KDPartitionedQuery query, int partitions) {
+		log.log(Level.INFO, "Executing: {0}", query.probeQuery());
+		try (Statement stmt = connection.createStatement(); ResultSet rs = stmt.executeQuery(query.probeQuery())) {
+			if (!rs.next())
+				return List.of();
+			return KDPartitionedQuery.linearBounds(rs.getString(1), rs.getString(2), partitions);
 		} catch (SQLException e) {
-			log.severe("Unable to execute SQL Query: " + e.getMessage());
+			throw new KDHostSqlException(e);
+		}
+	}
+
+	/*
+	 * dbtbl1.csv -> dbtbl1.001.csv
+	 */
+	private static Path partitionFile(Path output, int partition) {
+		final String name = output.getFileName().toString();
+		final int dot = name.lastIndexOf('.');
+		final String number = String.format(".%03d", partition);
+		return output.resolveSibling(dot > 0 ? name.substring(0, dot) + number + name.substring(dot) : name + number);
+	}
+
+	private void mergeFiles(Path[] files, Path output) throws IOException {
+		if (output == null) {
+			for (Path file : files) {
+				Files.copy(file, System.out);
+			}
+			System.out.flush();
+			return;
+		}
+		try (OutputStream out = Files.newOutputStream(output)) {
+			for (Path file : files) {
+				Files.copy(file, out);
+			}
+		}
+	}
+
+	private void deleteFiles(Path[] files) {
+		for (Path file : files) {
+			if (file == null)
+				continue;
+			try {
+				Files.deleteIfExists(file);
+			} catch (IOException e) {
+				log.log(Level.WARNING, "Unable to remove temporary file {0}", file);
+			}
+		}
+	}
+
+	/*
+	 * Rows are read by this thread and sent in batches, at most jobs batches at
+	 * once (each using own host session). First batch is loaded alone, so wrong
+	 * statement or input fails before parallel load starts. No batch is sent after
+	 * first failed one, batches already sent are finished.
+	 */
+	private void loadRows(KDHost host, String sql, Path input, KDQueryWriter.Format format, String separator,
+			List<String> columns, int batchSize, int jobs) {
+		final LongAdder rows = new LongAdder();
+		final LongAdder updated = new LongAdder();
+		final AtomicBoolean failed = new AtomicBoolean();
+		final long start = System.nanoTime();
+		try (KDRowReader reader = new KDRowReader(format, separator, openInput(input))) {
+			if (reader.getColumns().length == 0) {
+				log.warning("No rows to load");
+				return;
+			}
+			if (columns != null && !columns.isEmpty())
+				reader.selectColumns(columns);
+			final KDBatchLoader loader = new KDBatchLoader(sql, reader.getColumns().length);
+			log.log(Level.INFO, "Executing: {0}", sql);
+			final Consumer<List<String[]>> load = batch -> host.runWithSession(session -> {
+				// Batch could wait for free session while other one failed
+				if (failed.get())
+					return;
+				try {
+					updated.add(loader.execute(session.getConnection(), batch));
+					rows.add(batch.size());
+				} catch (SQLException e) {
+					failed.set(true);
+					throw new KDHostSqlException(e);
+				} catch (RuntimeException e) {
+					failed.set(true);
+					throw e;
+				}
+			});
+			// Batches are read lazily, second stream continues after first batch
+			reader.batches(batchSize).limit(1).forEach(load);
+			host.forEachParallel(reader.batches(batchSize).takeWhile(batch -> !failed.get()), jobs, load);
+		} catch (IOException e) {
+			throw new KDHostIOException(e);
+		} finally {
+			final long millis = Math.max(1, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+			printCommandResult(String.format("Rows: %d, Updated: %d, Time: %d ms, Rows/s: %.0f", rows.sum(),
+					updated.sum(), millis, rows.sum() * 1000.0 / millis));
+			if (failed.get())
+				printCommandError(String.format("Load stopped after failed batch, %d rows were committed", rows.sum()));
 		}
 	}
 
+	private Reader openInput(Path input) throws IOException {
+		if ("-".equals(input.toString()))
+			return new InputStreamReader(System.in, Charset.defaultCharset());
+		return Files.newBufferedReader(input, StandardCharsets.UTF_8);
+	}
+
+	/*
+	 * Query results are written through one buffer, not cell by cell to
+	 * (synchronized, autoflushing) System.out
+	 */
+	private Writer openOutput(Path output) throws IOException {
+		if (output == null)
+			return new BufferedWriter(new OutputStreamWriter(System.out, Charset.defaultCharset()), OUTPUT_BUFFER_SIZE);
+		return new BufferedWriter(new OutputStreamWriter(Files.newOutputStream(output), StandardCharsets.UTF_8),
+				OUTPUT_BUFFER_SIZE);
+	}
+
 	@Command(description = "Test compile elements on host", mixinStandardHelpOptions = true, versionProvider = in.drozd.kdhost.cliutils.KDHostVersionInformation.class)
 	void test(
 			@Parameters(index = "0..*", description = "Elements to refresh", arity = "1..*", paramLabel = "ELEMENT") Path[] elements)
 			throws Exception {
-		try (KDHost host = new KDHost(log)) {
+		try (KDHost host = newHost()) {
 			host.connectToHost();
 			for (Path el : elements) {
 				printCommandResult(host.testElement(new KDHostElement(el)));
@@ -294,46 +688,96 @@ public class KDHostMain implements Runnable {
 
 	@Command(description = "Test, Send, Compile elements on host", mixinStandardHelpOptions = true, versionProvider = in.drozd.kdhost.cliutils.KDHostVersionInformation.class)
 	void tsc(
+			@Option(names = "--jobs", description = "Number of elements processed in parallel (limited by KDHOST_POOL_SIZE), default: ${DEFAULT-VALUE}", defaultValue = "1", paramLabel = "N") int jobs,
 			@Parameters(index = "0..*", description = "Elements to refresh", arity = "1..*", paramLabel = "ELEMENT") Path[] elements)
 			throws Exception {
-		try (KDHost host = new KDHost(log)) {
+		try (KDHost host = newHost()) {
 			host.connectToHost();
-			for (Path file : elements) {
-				// Test Compile
-				KDHostElement el = new KDHostElement(file);
-				try {
-					host.testElement(el);
-				} catch (KDHostException e) {
-					// FIXME: Add logging!!!
-					continue;
-				}
-				// Save file in env if it's fine
-				try {
-					host.sendElement(el, KDElementTypes.TABLE.equals(el.getElementType()));
-				} catch (KDHostException e) {
-					continue;
-				}
-				// Compile and link
-				try {
-					host.compileElement(el);
-				} catch (KDHostException e) {
-					continue;
-				}
-			}
+			printTscResults(tscElements(host, elements, jobs));
+		}
+	}
+
+	/*
+	 * Command fails (exit code 1) when any element failed
+	 */
+	private void printTscResults(List<KDTscResult> results) {
+		results.forEach(result -> printCommandResult(result.toString()));
+		final long failed = results.stream().filter(result -> !result.isSuccess()).count();
+		printCommandResult(String.format("Passed: %d, Failed: %d", results.size() - failed, failed));
+		if (failed > 0)
+			throw new KDHostException(String.format("%d elements failed", failed));
+	}
 
+	/*
+	 * Test compile, save file in env if it's fine, compile and link. Results are
+	 * in the same order as elements.
+	 */
+	private List<KDTscResult> tscElements(KDHost host, Path[] elements, int jobs) {
+		final KDTscResult[] results = new KDTscResult[elements.length];
+		host.forEachParallel(IntStream.range(0, elements.length).boxed(), jobs,
+				i -> results[i] = host.tscElement(new KDHostElement(elements[i])));
+		return Arrays.asList(results);
+	}
+
+	@Command(description = "Keep host sessions open and execute commands started in current directory", mixinStandardHelpOptions = true, versionProvider = in.drozd.kdhost.cliutils.KDHostVersionInformation.class)
+	void daemon(
+			@Option(names = "--port", description = "Port on loopback address, default: any free port", defaultValue = "0", paramLabel = "PORT") int port,
+			@Option(names = "--keepalive", description = "Seconds between host session keepalive checks, default: ${DEFAULT-VALUE}", defaultValue = "60", paramLabel = "SECONDS") int keepAlive,
+			@Option(names = "--stop", description = "Stop running daemon", defaultValue = "false") boolean stop)
+			throws IOException {
+		if (stop) {
+			if (!KDHostDaemon.stop())
+				printCommandError("Daemon is not running");
+			return;
+		}
+		final ScheduledExecutorService keepAliveExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread t = new Thread(r, "kdhost-keepalive");
+			t.setDaemon(true);
+			return t;
+		});
+		try (KDHost host = newHost()) {
+			host.connectToHost();
+			if (keepAlive > 0) {
+				final long keepAliveMillis = TimeUnit.SECONDS.toMillis(keepAlive);
+				keepAliveExecutor.scheduleWithFixedDelay(() -> host.keepAlive(keepAliveMillis), keepAlive, keepAlive,
+						TimeUnit.SECONDS);
+			}
+			try (KDHostDaemon daemon = new KDHostDaemon(port, args -> runServed(host, args), log)) {
+				printCommandResult(String.format("Daemon listening on port %d", daemon.getPort()));
+				daemon.serve();
+			}
+		} finally {
+			keepAliveExecutor.shutdownNow();
 		}
 	}
 
 	@Command(description = "Watch for changes and execute tsc", mixinStandardHelpOptions = true, versionProvider = in.drozd.kdhost.cliutils.KDHostVersionInformation.class)
-	void watch(@Parameters(index = "0..*", description = "Directory to watch", paramLabel = "PATH") Path folder)
+	void watch(
+			@Option(names = "--keepalive", description = "Seconds between host session keepalive checks, default: ${DEFAULT-VALUE}", defaultValue = "60", paramLabel = "SECONDS") int keepAlive,
+			@Option(names = "--quiet-ms", description = "File has to be quiet for this time before it is processed, default: ${DEFAULT-VALUE}", defaultValue = "300", paramLabel = "MILLIS") long quietMillis,
+			@Option(names = "--jobs", description = "Number of files processed in parallel, default: host pool size", defaultValue = "0", paramLabel = "N") int jobs,
+			@Parameters(index = "0..*", description = "Directory to watch", paramLabel = "PATH") Path folder)
 			throws IOException {
 		this.watcher = FileSystems.getDefault().newWatchService();
 		this.keys = new HashMap<>();
 
 		log.log(Level.INFO, () -> String.format("Watcher started in: %s", folder.toAbsolutePath().normalize()));
-		try (KDHost host = new KDHost(log)) {
+		final ScheduledExecutorService keepAliveExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread t = new Thread(r, "kdhost-keepalive");
+			t.setDaemon(true);
+			return t;
+		});
+		// Host sessions are shared by all changes, they are kept alive between them
+		try (KDHost host = newHost()) {
 			this.walkAndRegisterDirectories(folder);
 			host.connectToHost();
+			pipeline = new KDWatchEventPipeline(quietMillis, jobs > 0 ? jobs : host.getPoolSize(),
+					child -> processChangedFile(host, child), this::processDeleteFile, log);
+			if (keepAlive > 0) {
+				final long keepAliveMillis = TimeUnit.SECONDS.toMillis(keepAlive);
+				keepAliveExecutor.scheduleWithFixedDelay(() -> host.keepAlive(keepAliveMillis), keepAlive, keepAlive,
+						TimeUnit.SECONDS);
+			}
 			for (;;) {
 
 				// wait for key to be signaled
@@ -369,7 +813,8 @@ public class KDHostMain implements Runnable {
 							if (child.toFile().isDirectory()) {
 								walkAndRegisterDirectories(child);
 							} else if (child.toFile().exists()) {
-								processNewFile(host, child);
+								log.log(Level.FINE, "New file: {0}", child);
+								pipeline.submit(child);
 							}
 						} catch (IOException x) {
 							log.log(Level.SEVERE, () -> String.format("Unable to register watcher for: %s",
@@ -378,23 +823,14 @@ public class KDHostMain implements Runnable {
 									folder.toAbsolutePath().normalize()));
 						}
 					}
-					if (kind == StandardWatchEventKinds.ENTRY_MODIFY && child.toFile().exists()) {
+					if (kind == StandardWatchEventKinds.ENTRY_MODIFY && child.toFile().isFile()) {
 						// Support just file changes, ignore directories modifications
-						processChangedFile(host, child);
+						pipeline.submit(child);
 					}
 					if (kind == StandardWatchEventKinds.ENTRY_DELETE) {
-						// For delete
-
-						if (child.toFile().exists()) {
-							// process file removal
-							processDeleteFile(host, child);
-						}
-						if (child.toFile().isDirectory()) {
-							// Don't remove files from host - you don't want it.
-							// If you have to use drop/remove command manually
-							log.log(Level.SEVERE, "Files from {0} are not removed from host", child);
-
-						}
+						// Editors often save file as delete + create, pipeline decides after quiet
+						// window if file is really removed
+						pipeline.submit(child);
 					}
 				}
 
@@ -413,45 +849,43 @@ public class KDHostMain implements Runnable {
 			log.log(Level.SEVERE,
 					() -> String.format("Unable to register watcher for: %s", folder.toAbsolutePath().normalize()));
 			throw new KDHostException(e);
+		} finally {
+			keepAliveExecutor.shutdownNow();
+			if (pipeline != null) {
+				pipeline.close();
+				pipeline = null;
+			}
 		}
 	}
 
-	private void processDeleteFile(KDHost host, Path el) {
-		log.info("Deleting file from host: " + el.getFileName());
-		if (gitIgnore.isExcluded(el.toAbsolutePath().normalize().toFile())) {
-			log.log(Level.CONFIG, "{0} file excluded by gitignore", el);
-			return;
-		}
-		try {
-			host.drop(new KDHostElement(el));
-
-		} catch (Exception e) {
-			log.severe("Can't delete file: " + e.getMessage());
-		}
+	private void processDeleteFile(Path el) {
+		// Don't remove files from host - you don't want it (checkout, stash, branch
+		// switch remove files too). If you have to use drop/remove command manually
+		log.log(Level.WARNING, "{0} removed, it is not removed from host", el);
 	}
 
-	private void processChangedFile(KDHost host, Path child) {
+	private boolean processChangedFile(KDHost host, Path child) {
 		log.log(Level.INFO, "Changed file: {0}", child);
-		processNewChangedFile(host, child);
-	}
-
-	private void processNewFile(KDHost host, Path child) {
-		log.log(Level.INFO, "New file: {0}", child);
-		processNewChangedFile(host, child);
-
+		return processNewChangedFile(host, child);
 	}
 
-	private void processNewChangedFile(KDHost host, Path child) {
+	/*
+	 * False when file wasn't processed successfully, it will be sent again on next
+	 * save even without content change
+	 */
+	private boolean processNewChangedFile(KDHost host, Path child) {
 		if (gitIgnore.isExcluded(child.toAbsolutePath().normalize().toFile())) {
 			log.log(Level.CONFIG, "{0} file excluded by gitignore", child);
-			return;
+			return true;
 		}
 		try {
 			log.log(Level.INFO, "{0} can be compiled", child);
-			this.tsc(new Path[] { child });
-
+			final KDTscResult result = host.tscElement(new KDHostElement(child));
+			log.log(result.isSuccess() ? Level.INFO : Level.SEVERE, "{0}", result);
+			return result.isSuccess();
 		} catch (Exception e) {
 			log.severe("Can't process file: " + child);
+			return false;
 		}
 	}
 
@@ -483,14 +917,6 @@ public class KDHostMain implements Runnable {
 		});
 	}
 
-	private void printElementType(KDElementTypes el, boolean justNames) {
-		if (justNames)
-			System.out.println(String.format("%s", el.name().toLowerCase()));
-		else
-			System.out.println(String.format("%-15s: %s", el.name().toLowerCase(), el));
-
-	}
-
 	private void printElements(KDHostElement element, boolean justNames) {
 		if (justNames)
 			System.out.println(element.getElementName());
@@ -0,0 +1,210 @@
+package in.drozd.kdhost;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import in.drozd.kdhost.utils.KDFileUtils;
+
+/**
+ * Local manifest of elements fetched from host ({@code .kdhost/manifest}).
+ *
+ * One line per element and host: host, path, content hash, size, time of last
+ * fetch, version of element on host (if known) and time when this version was
+ * seen first, separated with tab.
+ */
+public class KDHostManifest {
+
+	public static final Path DEFAULT_LOCATION = Path.of(".kdhost", "manifest");
+
+	private static final String SEPARATOR = "\t";
+
+	private final Path manifestFile;
+	private final String host;
+	private final Logger log;
+
+	// Entries of this host by path
+	private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+	// Lines of other hosts are kept as they are
+	private final Map<String, String> otherHosts = new TreeMap<>();
+
+	private volatile boolean changed = false;
+
+	public static class Entry {
+		private final String path;
+		private final String hash;
+		private final long size;
+		private final long fetchedAt;
+		private final String hostVersion;
+		private final long versionSeenAt;
+
+		public Entry(String path, String hash, long size, long fetchedAt, String hostVersion, long versionSeenAt) {
+			this.path = path;
+			this.hash = hash;
+			this.size = size;
+			this.fetchedAt = fetchedAt;
+			this.hostVersion = hostVersion;
+			this.versionSeenAt = versionSeenAt;
+		}
+
+		public String getPath() {
+			return path;
+		}
+
+		public String getHash() {
+			return hash;
+		}
+
+		public long getSize() {
+			return size;
+		}
+
+		public long getFetchedAt() {
+			return fetchedAt;
+		}
+
+		public String getHostVersion() {
+			return hostVersion;
+		}
+
+		public long getVersionSeenAt() {
+			return versionSeenAt;
+		}
+
+		private String toLine(String host) {
+			return String.join(SEPARATOR, host, path, hash, String.valueOf(size), String.valueOf(fetchedAt),
+					hostVersion, String.valueOf(versionSeenAt));
+		}
+	}
+
+	public KDHostManifest(Path manifestFile, String host, Logger log) {
+		this.manifestFile = manifestFile;
+		this.host = host;
+		this.log = log;
+		load();
+	}
+
+	private void load() {
+		if (!Files.exists(manifestFile))
+			return;
+		try (BufferedReader reader = Files.newBufferedReader(manifestFile, StandardCharsets.UTF_8)) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				final String[] parts = line.split(SEPARATOR);
+				if (parts.length < 5)
+					continue;
+				if (host.equals(parts[0])) {
+					entries.put(parts[1], new Entry(parts[1], parts[2], Long.parseLong(parts[3]),
+							Long.parseLong(parts[4]), parts.length > 5 ? parts[5] : "",
+							parts.length > 6 ? Long.parseLong(parts[6]) : Long.parseLong(parts[4])));
+				} else {
+					otherHosts.put(parts[0] + SEPARATOR + parts[1], line);
+				}
+			}
+		} catch (IOException | NumberFormatException e) {
+			log.log(Level.WARNING, "Unable to read manifest {0}, it will be recreated", manifestFile);
+		}
+	}
+
+	public static String key(Path path) {
+		return path.normalize().toString().replace('\\', '/');
+	}
+
+	public Optional<Entry> get(Path path) {
+		return Optional.ofNullable(entries.get(key(path)));
+	}
+
+	/**
+	 * Record fetched content. Content fetched later than host version was seen is
+	 * at least of that version, so known version is kept. It is set by
+	 * {@link #setHostVersion(Path, String)}.
+	 */
+	public void update(Path path, String hash, long size) {
+		final String key = key(path);
+		entries.compute(key, (k, e) -> new Entry(k, hash, size, System.currentTimeMillis(),
+				e == null ? "" : e.getHostVersion(), e == null ? 0 : e.getVersionSeenAt()));
+		changed = true;
+	}
+
+	public void setHostVersion(Path path, String hostVersion) {
+		entries.computeIfPresent(key(path),
+				(k, e) -> new Entry(k, e.getHash(), e.getSize(), e.getFetchedAt(), hostVersion,
+						hostVersion.equals(e.getHostVersion()) ? e.getVersionSeenAt() : System.currentTimeMillis()));
+		changed = true;
+	}
+
+	/**
+	 * Check if fetched content is of given host version. Date-only version (date of
+	 * last change) is trusted only when content was fetched on later day than the
+	 * version was seen first, element could be changed again the same day.
+	 */
+	public boolean hasHostVersion(Path path, String hostVersion, boolean dateOnly) {
+		final Entry entry = entries.get(key(path));
+		if (entry == null || !hostVersion.equals(entry.getHostVersion()))
+			return false;
+		return !dateOnly || localDate(entry.getFetchedAt()).isAfter(localDate(entry.getVersionSeenAt()));
+	}
+
+	private static LocalDate localDate(long millis) {
+		return Instant.ofEpochMilli(millis).atZone(ZoneId.systemDefault()).toLocalDate();
+	}
+
+	public void remove(Path path) {
+		if (entries.remove(key(path)) != null)
+			changed = true;
+	}
+
+	/**
+	 * Check if local file has given content. Local file is read only when it was
+	 * modified after last fetch (or it was never fetched).
+	 */
+	public boolean isUnchanged(Path path, String hash, long size) {
+		try {
+			if (!Files.exists(path) || Files.size(path) != size)
+				return false;
+			final Entry entry = entries.get(key(path));
+			if (entry != null && Files.getLastModifiedTime(path).toMillis() <= entry.getFetchedAt())
+				return entry.getHash().equals(hash);
+			return hash.equals(KDFileUtils.sha256(path));
+		} catch (IOException e) {
+			return false;
+		}
+	}
+
+	public synchronized void save() {
+		if (!changed)
+			return;
+		KDFileUtils.createDirectoryIfNotExists(manifestFile.toAbsolutePath().getParent());
+		final Path tmp = manifestFile.resolveSibling(manifestFile.getFileName() + ".tmp");
+		final Map<String, String> lines = new TreeMap<>(otherHosts);
+		entries.values().forEach(e -> lines.put(host + SEPARATOR + e.getPath(), e.toLine(host)));
+		try (BufferedWriter writer = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+			for (String line : lines.values()) {
+				writer.write(line);
+				writer.newLine();
+			}
+		} catch (IOException e) {
+			log.log(Level.WARNING, "Unable to save manifest {0}", manifestFile);
+			return;
+		}
+		try {
+			Files.move(tmp, manifestFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			changed = false;
+		} catch (IOException e) {
+			log.log(Level.WARNING, "Unable to save manifest {0}", manifestFile);
+		}
+	}
+}
@@ -0,0 +1,130 @@
+package in.drozd.kdhost;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+/**
+ * Counters of host calls and local I/O of this process: number of calls,
+ * errors, characters sent and received and latency per operation (MRPC121
+ * request, MRPC81, listing query, connect, file read/write, ...).
+ */
+public class KDHostMetrics {
+
+	private static final KDHostMetrics GLOBAL = new KDHostMetrics();
+
+	private final Map<String, Operation> operations = new ConcurrentHashMap<>();
+
+	public static KDHostMetrics get() {
+		return GLOBAL;
+	}
+
+	public static class Operation {
+		private final LongAdder errors = new LongAdder();
+		private final LongAdder sent = new LongAdder();
+		private final LongAdder received = new LongAdder();
+		private final KDLatencyHistogram latency = new KDLatencyHistogram();
+
+		public long getCount() {
+			return latency.getCount();
+		}
+
+		public long getErrors() {
+			return errors.sum();
+		}
+
+		public long getSent() {
+			return sent.sum();
+		}
+
+		public long getReceived() {
+			return received.sum();
+		}
+
+		public KDLatencyHistogram getLatency() {
+			return latency;
+		}
+	}
+
+	/**
+	 * Running operation, recorded when stopped. Operation which was not marked as
+	 * successful is recorded as error.
+	 */
+	public class Sample {
+		private final String operation;
+		private final long sent;
+		private final long start = System.nanoTime();
+		private long received = 0;
+		private boolean success = false;
+
+		private Sample(String operation, long sent) {
+			this.operation = operation;
+			this.sent = sent;
+		}
+
+		public void ok(long received) {
+			this.received = received;
+			this.success = true;
+		}
+
+		public void stop() {
+			record(operation, System.nanoTime() - start, sent, received, success);
+		}
+	}
+
+	public Sample start(String operation, long sent) {
+		return new Sample(operation, sent);
+	}
+
+	public void record(String operation, long nanos, long sent, long received, boolean success) {
+		final Operation op = operations.computeIfAbsent(operation, o -> new Operation());
+		op.latency.record(nanos);
+		op.sent.add(sent);
+		op.received.add(received);
+		if (!success)
+			op.errors.increment();
+	}
+
+	public Map<String, Operation> getOperations() {
+		return new TreeMap<>(operations);
+	}
+
+	public void reset() {
+		operations.clear();
+	}
+
+	private static String millis(long nanos) {
+		return String.format("%.1f", nanos / (double) TimeUnit.MILLISECONDS.toNanos(1));
+	}
+
+	public String toTable() {
+		final StringBuilder sb = new StringBuilder();
+		sb.append(String.format("%-12s %8s %6s %10s %10s %9s %9s %9s %9s %11s%n", "OPERATION", "COUNT", "ERRORS",
+				"SENT(KB)", "RECV(KB)", "P50(ms)", "P90(ms)", "P99(ms)", "MAX(ms)", "TOTAL(ms)"));
+		getOperations().forEach((name, op) -> {
+			final KDLatencyHistogram l = op.getLatency();
+			sb.append(String.format("%-12s %8d %6d %10.1f %10.1f %9s %9s %9s %9s %11s%n", name, op.getCount(),
+					op.getErrors(), op.getSent() / 1024.0, op.getReceived() / 1024.0, millis(l.percentile(0.5)),
+					millis(l.percentile(0.9)), millis(l.percentile(0.99)), millis(l.getMax()), millis(l.getTotal())));
+		});
+		return sb.toString();
+	}
+
+	/**
+	 * Same data as {@link #toTable()}, latencies in nanoseconds.
+	 */
+	public String toJson() {
+		return getOperations().entrySet().stream().map(e -> {
+			final Operation op = e.getValue();
+			final KDLatencyHistogram l = op.getLatency();
+			return String.format(
+					"\"%s\":{\"count\":%d,\"errors\":%d,\"sent\":%d,\"received\":%d,\"p50\":%d,\"p90\":%d,\"p99\":%d,\"max\":%d,\"total\":%d}",
+					e.getKey().replace("\\", "\\\\").replace("\"", "\\\""), op.getCount(), op.getErrors(),
+					op.getSent(), op.getReceived(), l.percentile(0.5), l.percentile(0.9), l.percentile(0.99),
+					l.getMax(), l.getTotal());
+		}).collect(Collectors.joining(",", "{", "}"));
+	}
+}
@@ -0,0 +1,95 @@
+package in.drozd.kdhost;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Properties;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import in.drozd.kdhost.utils.KDFileUtils;
+
+/**
+ * Information learned about host (limits, features), kept between runs in
+ * {@code ~/.kdhost/hosts/<host>/profile.properties}.
+ */
+public class KDHostProfile {
+
+	private final Path profileFile;
+	private final Properties properties = new Properties();
+	private final Logger log;
+
+	public KDHostProfile(Path profileFile, Logger log) {
+		this.profileFile = profileFile;
+		this.log = log;
+		if (Files.exists(profileFile)) {
+			try (Reader reader = Files.newBufferedReader(profileFile, StandardCharsets.UTF_8)) {
+				properties.load(reader);
+			} catch (IOException e) {
+				log.log(Level.WARNING, "Unable to read host profile {0}", profileFile);
+			}
+		}
+	}
+
+	public static KDHostProfile forHost(String host, Logger log) {
+		return new KDHostProfile(hostDirectory(host).resolve("profile.properties"), log);
+	}
+
+	/**
+	 * Address of host (KDHOST_HOST)
+	 */
+	public static String hostAddress() {
+		return System.getProperty("KDHOST_HOST", "127.0.0.1:49200");
+	}
+
+	/**
+	 * Key of local information (profile, listing cache, manifest, daemon): JDBC
+	 * connection string without parameters when KDHOST_URL is set, host address
+	 * otherwise.
+	 */
+	public static String hostKey() {
+		final String url = System.getProperty("KDHOST_URL");
+		if (url == null || url.isBlank())
+			return hostAddress();
+		// Parameters can contain credentials
+		return url.trim().split("[?;]", 2)[0];
+	}
+
+	/**
+	 * Directory with all local information about host. Can be changed with
+	 * KDHOST_HOME property.
+	 */
+	public static Path hostDirectory(String host) {
+		final Path home = Path.of(System.getProperty("KDHOST_HOME",
+				Path.of(System.getProperty("user.home"), ".kdhost").toString()));
+		return home.resolve("hosts").resolve(host.replaceAll("[^A-Za-z0-9._-]", "_"));
+	}
+
+	public synchronized int getInt(String key, int defaultValue) {
+		try {
+			return Integer.parseInt(properties.getProperty(key, String.valueOf(defaultValue)));
+		} catch (NumberFormatException e) {
+			return defaultValue;
+		}
+	}
+
+	public synchronized String get(String key, String defaultValue) {
+		return properties.getProperty(key, defaultValue);
+	}
+
+	public synchronized void set(String key, Object value) {
+		properties.setProperty(key, String.valueOf(value));
+	}
+
+	public synchronized void save() {
+		KDFileUtils.createDirectoryIfNotExists(profileFile.getParent());
+		try (Writer writer = Files.newBufferedWriter(profileFile, StandardCharsets.UTF_8)) {
+			properties.store(writer, "KDHost host profile");
+		} catch (IOException e) {
+			log.log(Level.WARNING, "Unable to save host profile {0}", profileFile);
+		}
+	}
+}
@@ -0,0 +1,99 @@
+package in.drozd.kdhost;
+
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+
+import in.drozd.kdhost.exceptions.KDHostSqlException;
+
+/**
+ * Single host session (JDBC connection) leased from
+ * {@link KDHostConnectionPool}. Whole host exchange (INITOBJ/RETOBJ,
+ * INITCODE/SAVEOBJ, ...) should be done using one session.
+ */
+public class KDHostSession implements AutoCloseable {
+
+	// Maximum number of prepared MRPC calls kept per session
+	private static final int STATEMENT_CACHE_SIZE = Math.max(1, Integer.getInteger("KDHOST_STATEMENT_CACHE", 16));
+
+	private final Connection connection;
+	private final KDStatementCache statements;
+
+	private volatile long lastUsed = System.currentTimeMillis();
+	private volatile boolean broken = false;
+
+	public KDHostSession(Connection connection) {
+		this.connection = connection;
+		this.statements = new KDStatementCache(connection, STATEMENT_CACHE_SIZE);
+	}
+
+	public void touch() {
+		this.lastUsed = System.currentTimeMillis();
+	}
+
+	public long getIdleMillis() {
+		return System.currentTimeMillis() - lastUsed;
+	}
+
+	/**
+	 * Check connection with host (round trip for most drivers).
+	 */
+	public boolean isValid(int timeoutSeconds) {
+		if (broken)
+			return false;
+		try {
+			return connection.isValid(timeoutSeconds);
+		} catch (SQLFeatureNotSupportedException | AbstractMethodError e) {
+			// Old drivers
+			return isOpen();
+		} catch (SQLException e) {
+			return false;
+		}
+	}
+
+	private boolean isOpen() {
+		try {
+			return !connection.isClosed();
+		} catch (SQLException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Session will be closed instead of returned to pool.
+	 */
+	public void markBroken() {
+		this.broken = true;
+	}
+
+	public boolean isBroken() {
+		return broken;
+	}
+
+	public Connection getConnection() {
+		return connection;
+	}
+
+	/**
+	 * Prepared (cached) call of MRPC with given number of parameters (including
+	 * response parameter). Don't close returned statement.
+	 */
+	public CallableStatement prepareMrpc(String mrpcId, int numberOfParameters) throws SQLException {
+		return statements.prepareMrpc(mrpcId, numberOfParameters);
+	}
+
+	public void evictMrpc(String mrpcId, int numberOfParameters) {
+		statements.evict(mrpcId, numberOfParameters);
+	}
+
+	@Override
+	public void close() {
+		statements.close();
+		try {
+			connection.close();
+		} catch (SQLException e) {
+			throw new KDHostSqlException(e);
+		}
+	}
+}
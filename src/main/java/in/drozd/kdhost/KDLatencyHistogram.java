@@ -0,0 +1,74 @@
+package in.drozd.kdhost;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock free latency histogram. Values are kept in buckets with 4 buckets per
+ * power of two, so percentiles are accurate to ~25%. Maximum is exact.
+ */
+public class KDLatencyHistogram {
+
+	private static final int SUB_BUCKETS = 4;
+	// Up to 2^42 ns (~73 minutes)
+	private static final int BUCKETS = 43 * SUB_BUCKETS;
+
+	private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+	private final LongAdder count = new LongAdder();
+	private final LongAdder total = new LongAdder();
+	private final AtomicLong max = new AtomicLong();
+
+	public void record(long nanos) {
+		final long value = Math.max(0, nanos);
+		buckets.incrementAndGet(bucket(value));
+		count.increment();
+		total.add(value);
+		max.accumulateAndGet(value, Math::max);
+	}
+
+	static int bucket(long nanos) {
+		if (nanos < SUB_BUCKETS)
+			return (int) nanos;
+		final int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+		final int sub = (int) ((nanos >> (exponent - 2)) & (SUB_BUCKETS - 1));
+		return Math.min(BUCKETS - 1, (exponent - 1) * SUB_BUCKETS + sub);
+	}
+
+	static long upperBound(int bucket) {
+		if (bucket < SUB_BUCKETS)
+			return bucket;
+		final int exponent = bucket / SUB_BUCKETS + 1;
+		final int sub = bucket % SUB_BUCKETS;
+		return ((long) (SUB_BUCKETS + sub + 1) << (exponent - 2)) - 1;
+	}
+
+	public long getCount() {
+		return count.sum();
+	}
+
+	public long getTotal() {
+		return total.sum();
+	}
+
+	public long getMax() {
+		return max.get();
+	}
+
+	/**
+	 * Value below which given part (0-1) of recorded values are.
+	 */
+	public long percentile(double part) {
+		final long all = getCount();
+		if (all == 0)
+			return 0;
+		final long rank = Math.max(1, (long) Math.ceil(part * all));
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += buckets.get(i);
+			if (seen >= rank)
+				return Math.min(upperBound(i), getMax());
+		}
+		return getMax();
+	}
+}
@@ -0,0 +1,209 @@
+package in.drozd.kdhost;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import in.drozd.kdhost.utils.KDFileUtils;
+
+/**
+ * Element listings of host kept on local drive
+ * ({@code ~/.kdhost/hosts/<host>/listing/<TYPE>[-<TABLE>].list}), one file name
+ * per line. Tables of host catalog are kept in {@code catalog.tables}. Listing
+ * older than TTL is fetched again.
+ */
+public class KDListingCache {
+
+	private static final String EXTENSION = ".list";
+	private static final String CATALOG = "catalog.tables";
+
+	private final Path directory;
+	private final long ttlMillis;
+	private final Logger log;
+
+	public KDListingCache(Path directory, long ttlMillis, Logger log) {
+		this.directory = directory;
+		this.ttlMillis = ttlMillis;
+		this.log = log;
+	}
+
+	public static KDListingCache forHost(String host, Logger log) {
+		final long ttl = Long.getLong("KDHOST_LIST_CACHE_TTL", 300);
+		return new KDListingCache(KDHostProfile.hostDirectory(host).resolve("listing"), ttl * 1000, log);
+	}
+
+	private Path file(KDElementTypes type, String table) {
+		final String key = table == null || table.isBlank() ? type.name() : type.name() + "-" + table;
+		return directory.resolve(key.replaceAll("[^A-Za-z0-9._-]", "_") + EXTENSION);
+	}
+
+	public Optional<List<KDHostElement>> get(KDElementTypes type, String table) {
+		return stream(type, table).map(elements -> {
+			try (elements) {
+				return elements.collect(Collectors.toList());
+			}
+		});
+	}
+
+	/**
+	 * Cached listing read while stream is consumed. Stream has to be closed.
+	 */
+	public Optional<Stream<KDHostElement>> stream(KDElementTypes type, String table) {
+		return lines(file(type, table)).map(lines -> lines
+				.map(fileName -> new KDHostElement(KDFileUtils.getElementName(fileName), type, fileName)));
+	}
+
+	public void put(KDElementTypes type, String table, List<KDHostElement> elements) {
+		try (Writer writer = writer(type, table)) {
+			elements.forEach(writer::add);
+			writer.commit();
+		}
+	}
+
+	/**
+	 * Names of all tables on host
+	 */
+	public Optional<Set<String>> getTables() {
+		return lines(directory.resolve(CATALOG)).map(lines -> {
+			try (lines) {
+				return lines.collect(Collectors.toCollection(HashSet::new));
+			}
+		});
+	}
+
+	public void putTables(Set<String> tables) {
+		try (Writer writer = new Writer(directory.resolve(CATALOG))) {
+			new TreeSet<>(tables).forEach(writer::add);
+			writer.commit();
+		}
+	}
+
+	private Optional<Stream<String>> lines(Path file) {
+		if (ttlMillis <= 0)
+			return Optional.empty();
+		try {
+			if (!Files.exists(file)
+					|| System.currentTimeMillis() - Files.getLastModifiedTime(file).toMillis() > ttlMillis)
+				return Optional.empty();
+			log.log(Level.FINE, "Using cached listing {0}", file);
+			return Optional.of(Files.lines(file, StandardCharsets.UTF_8).filter(line -> !line.isEmpty()));
+		} catch (IOException | UncheckedIOException e) {
+			log.log(Level.WARNING, "Unable to read cached listing {0}", file);
+			return Optional.empty();
+		}
+	}
+
+	/**
+	 * Listing is written while elements are fetched from host and replaces cached
+	 * listing only when committed (whole listing was read).
+	 */
+	public Writer writer(KDElementTypes type, String table) {
+		return new Writer(file(type, table));
+	}
+
+	public class Writer implements AutoCloseable {
+		private final Path file;
+		private final Path tempFile;
+		private BufferedWriter out;
+
+		private Writer(Path file) {
+			this.file = file;
+			this.tempFile = file.resolveSibling("." + file.getFileName() + "." + Thread.currentThread().getId());
+			if (ttlMillis <= 0)
+				return;
+			try {
+				KDFileUtils.createDirectoryIfNotExists(directory);
+				out = Files.newBufferedWriter(tempFile, StandardCharsets.UTF_8);
+			} catch (IOException e) {
+				failed(e);
+			}
+		}
+
+		public void add(KDHostElement element) {
+			add(element.getFileName());
+		}
+
+		private void add(String line) {
+			if (out == null)
+				return;
+			try {
+				out.write(line);
+				out.newLine();
+			} catch (IOException e) {
+				failed(e);
+			}
+		}
+
+		public void commit() {
+			if (out == null)
+				return;
+			try {
+				out.close();
+				out = null;
+				try {
+					Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+				} catch (AtomicMoveNotSupportedException e) {
+					Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING);
+				}
+			} catch (IOException e) {
+				failed(e);
+			}
+		}
+
+		private void failed(IOException e) {
+			log.log(Level.WARNING, "Unable to save listing {0}: {1}", new Object[] { file, e.getMessage() });
+			close();
+		}
+
+		/**
+		 * Not committed listing is dropped
+		 */
+		@Override
+		public void close() {
+			if (out != null) {
+				try {
+					out.close();
+				} catch (IOException e) {
+					log.log(Level.FINE, "Unable to close {0}", tempFile);
+				}
+				out = null;
+			}
+			try {
+				Files.deleteIfExists(tempFile);
+			} catch (IOException e) {
+				log.log(Level.FINE, "Unable to remove {0}", tempFile);
+			}
+		}
+	}
+
+	/**
+	 * Remove cached listings of element type (including listings of tables).
+	 */
+	public void invalidate(KDElementTypes type) {
+		if (!Files.isDirectory(directory))
+			return;
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(directory,
+				type.name() + "{" + EXTENSION + ",-*" + EXTENSION + "}")) {
+			for (Path file : files) {
+				Files.deleteIfExists(file);
+			}
+		} catch (IOException e) {
+			log.log(Level.WARNING, "Unable to remove cached listings of {0}", type);
+		}
+	}
+}
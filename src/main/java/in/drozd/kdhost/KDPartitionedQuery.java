@@ -0,0 +1,122 @@
+package in.drozd.kdhost;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import in.drozd.kdhost.exceptions.KDHostException;
+
+/**
+ * SELECT split into key ranges of one column, so partitions can be read using
+ * separate host sessions. For bounds b1..bn partitions are: key < b1 (and null
+ * keys), b1 <= key < b2, ..., key >= bn.
+ */
+public class KDPartitionedQuery {
+
+	private static final Pattern FROM = Pattern.compile("(?i)\\sFROM\\s");
+	private static final Pattern WHERE = Pattern.compile("(?i)\\sWHERE\\s");
+	private static final Pattern ORDER_BY = Pattern.compile("(?i)\\sORDER\\s+BY\\s");
+	private static final Pattern NUMBER = Pattern.compile("-?\\d+(\\.\\d+)?");
+
+	// SELECT ... FROM ... without WHERE and ORDER BY
+	private final String selectFrom;
+	private final String where;
+	private final String orderBy;
+	private final String from;
+	private final String keyColumn;
+
+	public KDPartitionedQuery(String query, String keyColumn) {
+		this.keyColumn = keyColumn;
+		String rest = query.trim();
+		final Matcher order = ORDER_BY.matcher(rest);
+		if (order.find()) {
+			orderBy = rest.substring(order.start());
+			rest = rest.substring(0, order.start());
+		} else {
+			orderBy = "";
+		}
+		final Matcher where = WHERE.matcher(rest);
+		if (where.find()) {
+			this.where = rest.substring(where.end()).trim();
+			rest = rest.substring(0, where.start());
+		} else {
+			this.where = null;
+		}
+		final Matcher from = FROM.matcher(rest);
+		if (!from.find())
+			throw new KDHostException("Only SELECT ... FROM ... queries can be partitioned");
+		this.selectFrom = rest;
+		this.from = rest.substring(from.start());
+	}
+
+	/**
+	 * Query of minimal and maximal key
+	 */
+	public String probeQuery() {
+		return String.format("SELECT MIN(%s),MAX(%s)%s%s", keyColumn, keyColumn, from,
+				where == null ? "" : " WHERE " + where);
+	}
+
+	/**
+	 * One query per partition, bounds have to be sorted
+	 */
+	public List<String> partitionQueries(List<String> bounds) {
+		final List<String> queries = new ArrayList<>();
+		for (int i = 0; i <= bounds.size(); i++) {
+			final String range;
+			if (bounds.isEmpty())
+				range = null;
+			else if (i == 0)
+				range = String.format("%s IS NULL OR %s < %s", keyColumn, keyColumn, literal(bounds.get(0)));
+			else if (i == bounds.size())
+				range = String.format("%s >= %s", keyColumn, literal(bounds.get(i - 1)));
+			else
+				range = String.format("%s >= %s AND %s < %s", keyColumn, literal(bounds.get(i - 1)), keyColumn,
+						literal(bounds.get(i)));
+			queries.add(selectFrom + condition(range) + orderBy);
+		}
+		return queries;
+	}
+
+	private String condition(String range) {
+		if (range == null)
+			return where == null ? "" : " WHERE " + where;
+		if (where == null)
+			return " WHERE " + range;
+		return " WHERE (" + where + ") AND (" + range + ")";
+	}
+
+	private static String literal(String value) {
+		if (NUMBER.matcher(value).matches())
+			return value;
+		return "'" + value.replace("'", "''") + "'";
+	}
+
+	/**
+	 * Bounds splitting numeric key range into partitions of the same width
+	 */
+	public static List<String> linearBounds(String min, String max, int partitions) {
+		if (min == null || max == null)
+			return List.of();
+		if (!NUMBER.matcher(min.trim()).matches() || !NUMBER.matcher(max.trim()).matches())
+			throw new KDHostException(String.format(
+					"Key range %s - %s is not numeric, partition bounds have to be given with --bounds", min, max));
+		final BigDecimal low = new BigDecimal(min.trim());
+		final BigDecimal high = new BigDecimal(max.trim());
+		final boolean integer = low.scale() <= 0 && high.scale() <= 0;
+		final BigDecimal step = high.subtract(low).divide(BigDecimal.valueOf(partitions), 10, RoundingMode.HALF_UP);
+		final List<String> bounds = new ArrayList<>();
+		for (int i = 1; i < partitions; i++) {
+			BigDecimal bound = low.add(step.multiply(BigDecimal.valueOf(i)));
+			bound = integer ? bound.setScale(0, RoundingMode.CEILING) : bound.stripTrailingZeros();
+			final String value = bound.toPlainString();
+			// Narrow ranges give the same bound more than once
+			if (bound.compareTo(low) > 0 && (bounds.isEmpty() || !bounds.get(bounds.size() - 1).equals(value)))
+				bounds.add(value);
+		}
+		return bounds;
+	}
+}
@@ -0,0 +1,202 @@
+package in.drozd.kdhost;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+
+/**
+ * Writes query results in selected format. Output is not flushed after rows,
+ * caller should use buffered writer and flush it at the end.
+ */
+public class KDQueryWriter {
+
+	public enum Format {
+		// Values separated with separator, as they are
+		PLAIN,
+		// Comma separated, values quoted when needed (RFC 4180)
+		CSV,
+		// Tab separated, values quoted when needed
+		TSV,
+		// One JSON object per row
+		JSONL,
+		// Columns padded to width reported by driver (at most MAX_FIXED_WIDTH)
+		FIXED
+	}
+
+	private static final int MAX_FIXED_WIDTH = 64;
+	private static final String NULL = "null";
+
+	private final Format format;
+	private final String separator;
+	private final Writer out;
+
+	private String[] columns;
+	private int[] widths;
+
+	public KDQueryWriter(Format format, String separator, Writer out) {
+		this.format = format;
+		this.separator = format == Format.CSV ? "," : format == Format.TSV ? "\t" : separator;
+		this.out = out;
+	}
+
+	/**
+	 * Write header and all rows, returns number of rows
+	 */
+	public long write(ResultSet rs) throws SQLException, IOException {
+		return write(rs, true);
+	}
+
+	/**
+	 * Write all rows, header only when requested (e.g. only in first part of
+	 * partitioned query)
+	 */
+	public long write(ResultSet rs, boolean header) throws SQLException, IOException {
+		final ResultSetMetaData rsmd = rs.getMetaData();
+		final int columnsNumber = rsmd.getColumnCount();
+		final String[] names = new String[columnsNumber];
+		final int[] sizes = new int[columnsNumber];
+		for (int i = 1; i <= columnsNumber; i++) {
+			names[i - 1] = rsmd.getColumnName(i);
+			sizes[i - 1] = rsmd.getColumnDisplaySize(i);
+		}
+		if (header)
+			writeHeader(names, sizes);
+		else
+			setColumns(names, sizes);
+
+		final String[] values = new String[columnsNumber];
+		long rows = 0;
+		while (rs.next()) {
+			for (int i = 1; i <= columnsNumber; i++) {
+				values[i - 1] = rs.getString(i);
+			}
+			writeRow(values);
+			rows++;
+		}
+		return rows;
+	}
+
+	/**
+	 * @param sizes display sizes of columns (used by FIXED format)
+	 */
+	public void writeHeader(String[] names, int[] sizes) throws IOException {
+		setColumns(names, sizes);
+		switch (format) {
+		case JSONL:
+			break;
+		case FIXED:
+			writeFixed(names);
+			break;
+		default:
+			writeDelimited(names);
+			break;
+		}
+	}
+
+	private void setColumns(String[] names, int[] sizes) {
+		this.columns = names.clone();
+		this.widths = new int[names.length];
+		for (int i = 0; i < names.length; i++) {
+			widths[i] = Math.max(names[i].length(), Math.min(Math.max(sizes[i], 0), MAX_FIXED_WIDTH));
+		}
+	}
+
+	public void writeRow(String[] values) throws IOException {
+		switch (format) {
+		case JSONL:
+			writeJson(values);
+			break;
+		case FIXED:
+			writeFixed(values);
+			break;
+		default:
+			writeDelimited(values);
+			break;
+		}
+	}
+
+	private void writeDelimited(String[] values) throws IOException {
+		for (int i = 0; i < values.length; i++) {
+			if (i > 0)
+				out.write(separator);
+			if (format == Format.PLAIN)
+				out.write(values[i] == null ? NULL : values[i]);
+			else if (values[i] != null)
+				writeQuoted(values[i]);
+		}
+		out.write('\n');
+	}
+
+	private void writeQuoted(String value) throws IOException {
+		if (value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0
+				&& !value.contains(separator)) {
+			out.write(value);
+			return;
+		}
+		out.write('"');
+		out.write(value.replace("\"", "\"\""));
+		out.write('"');
+	}
+
+	private void writeFixed(String[] values) throws IOException {
+		for (int i = 0; i < values.length; i++) {
+			final String value = values[i] == null ? NULL : values[i];
+			out.write(value);
+			// Last column is not padded
+			if (i < values.length - 1) {
+				for (int pad = value.length(); pad <= widths[i]; pad++) {
+					out.write(' ');
+				}
+			}
+		}
+		out.write('\n');
+	}
+
+	private void writeJson(String[] values) throws IOException {
+		out.write('{');
+		for (int i = 0; i < values.length; i++) {
+			if (i > 0)
+				out.write(',');
+			writeJsonString(columns[i]);
+			out.write(':');
+			if (values[i] == null)
+				out.write(NULL);
+			else
+				writeJsonString(values[i]);
+		}
+		out.write("}\n");
+	}
+
+	private void writeJsonString(String value) throws IOException {
+		out.write('"');
+		for (int i = 0; i < value.length(); i++) {
+			final char c = value.charAt(i);
+			switch (c) {
+			case '"':
+				out.write("\\\"");
+				break;
+			case '\\':
+				out.write("\\\\");
+				break;
+			case '\n':
+				out.write("\\n");
+				break;
+			case '\r':
+				out.write("\\r");
+				break;
+			case '\t':
+				out.write("\\t");
+				break;
+			default:
+				if (c < 0x20)
+					out.write(String.format("\\u%04x", (int) c));
+				else
+					out.write(c);
+				break;
+			}
+		}
+		out.write('"');
+	}
+}
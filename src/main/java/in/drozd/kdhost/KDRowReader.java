@@ -0,0 +1,335 @@
+package in.drozd.kdhost;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import in.drozd.kdhost.exceptions.KDHostException;
+import in.drozd.kdhost.exceptions.KDHostIOException;
+
+/**
+ * Reads rows in format written by {@link KDQueryWriter}: PLAIN, CSV and TSV
+ * with header line, JSONL with one flat object per line (keys of first object
+ * are columns). Empty (not quoted) CSV/TSV values, "null" PLAIN values and JSON
+ * nulls are read as null.
+ */
+public class KDRowReader implements Closeable {
+
+	private static final String NULL = "null";
+
+	private final KDQueryWriter.Format format;
+	private final String separator;
+	private final BufferedReader in;
+
+	private String[] columns;
+	// Positions of selected columns in input, null when all columns are used
+	private int[] selected;
+	private String[] firstRow;
+	private long line = 0;
+
+	// JSON line being parsed
+	private String json;
+	private int pos;
+
+	public KDRowReader(KDQueryWriter.Format format, String separator, Reader in) {
+		if (format == KDQueryWriter.Format.FIXED)
+			throw new KDHostException("FIXED format can't be read, use CSV, TSV, JSONL or PLAIN");
+		this.format = format;
+		this.separator = format == KDQueryWriter.Format.CSV ? "," : format == KDQueryWriter.Format.TSV ? "\t" : separator;
+		this.in = in instanceof BufferedReader ? (BufferedReader) in : new BufferedReader(in);
+	}
+
+	/**
+	 * Names of (selected) columns, empty for empty input
+	 */
+	public String[] getColumns() {
+		readHeader();
+		if (selected == null)
+			return columns.clone();
+		return Arrays.stream(selected).mapToObj(i -> columns[i]).toArray(String[]::new);
+	}
+
+	/**
+	 * Only given columns (in given order) are returned by {@link #next()}
+	 */
+	public void selectColumns(List<String> names) {
+		readHeader();
+		final int[] positions = new int[names.size()];
+		for (int i = 0; i < positions.length; i++) {
+			positions[i] = indexOf(names.get(i).trim());
+			if (positions[i] < 0)
+				throw new KDHostException(String.format("Column %s not found in input, columns: %s", names.get(i),
+						String.join(",", columns)));
+		}
+		this.selected = positions;
+	}
+
+	private int indexOf(String name) {
+		for (int i = 0; i < columns.length; i++) {
+			if (columns[i].equalsIgnoreCase(name))
+				return i;
+		}
+		return -1;
+	}
+
+	private void readHeader() {
+		if (columns != null)
+			return;
+		try {
+			if (format == KDQueryWriter.Format.JSONL) {
+				final Map<String, String> values = readJson();
+				columns = values == null ? new String[0] : values.keySet().toArray(new String[0]);
+				firstRow = values == null ? null : values.values().toArray(new String[0]);
+			} else {
+				final String[] header = readRecord();
+				columns = header == null ? new String[0] : header;
+			}
+		} catch (IOException e) {
+			throw new KDHostIOException(e);
+		}
+	}
+
+	/**
+	 * Values of next row (in order of selected columns), null at end of input
+	 */
+	public String[] next() throws IOException {
+		readHeader();
+		final String[] row;
+		if (firstRow != null) {
+			row = firstRow;
+			firstRow = null;
+		} else if (format == KDQueryWriter.Format.JSONL) {
+			final Map<String, String> values = readJson();
+			row = values == null ? null : jsonRow(values);
+		} else {
+			row = readRecord();
+			if (row != null && row.length != columns.length)
+				throw new KDHostException(String.format("Line %d has %d values, expected %d", line, row.length,
+						columns.length));
+		}
+		if (row == null || selected == null)
+			return row;
+		return Arrays.stream(selected).mapToObj(i -> row[i]).toArray(String[]::new);
+	}
+
+	/**
+	 * Rows read lazily in lists of given size
+	 */
+	public Stream<List<String[]>> batches(int size) {
+		return StreamSupport.stream(new Spliterators.AbstractSpliterator<List<String[]>>(Long.MAX_VALUE,
+				Spliterator.ORDERED | Spliterator.NONNULL) {
+			@Override
+			public boolean tryAdvance(Consumer<? super List<String[]>> action) {
+				final List<String[]> batch = new ArrayList<>(size);
+				try {
+					String[] row;
+					while (batch.size() < size && (row = next()) != null)
+						batch.add(row);
+				} catch (IOException e) {
+					throw new KDHostIOException(e);
+				}
+				if (batch.isEmpty())
+					return false;
+				action.accept(batch);
+				return true;
+			}
+		}, false);
+	}
+
+	private String[] jsonRow(Map<String, String> values) {
+		final String[] row = new String[columns.length];
+		for (Map.Entry<String, String> value : values.entrySet()) {
+			final int i = indexOf(value.getKey());
+			if (i < 0)
+				throw new KDHostException(String.format("Unknown column %s in line %d", value.getKey(), line));
+			row[i] = value.getValue();
+		}
+		return row;
+	}
+
+	private String[] readRecord() throws IOException {
+		if (format == KDQueryWriter.Format.PLAIN) {
+			String text;
+			do {
+				text = in.readLine();
+				line++;
+			} while (text != null && text.isEmpty());
+			if (text == null)
+				return null;
+			return Arrays.stream(text.split(Pattern.quote(separator), -1)).map(v -> NULL.equals(v) ? null : v)
+					.toArray(String[]::new);
+		}
+		return readDelimited(separator.charAt(0));
+	}
+
+	/*
+	 * RFC 4180: quoted values can contain separator, new lines and quotes
+	 * (doubled)
+	 */
+	private String[] readDelimited(char delimiter) throws IOException {
+		int c = in.read();
+		// Empty lines are skipped
+		while (c == '\r' || c == '\n') {
+			if (c == '\n')
+				line++;
+			c = in.read();
+		}
+		if (c < 0)
+			return null;
+		line++;
+		final List<String> values = new ArrayList<>();
+		final StringBuilder value = new StringBuilder();
+		boolean quoted = false;
+		while (true) {
+			if (c == '"' && value.length() == 0 && !quoted) {
+				quoted = true;
+				while (true) {
+					c = in.read();
+					if (c < 0)
+						throw new KDHostException(String.format("Quoted value not closed in line %d", line));
+					if (c == '"') {
+						c = in.read();
+						if (c != '"')
+							break;
+					} else if (c == '\n') {
+						line++;
+					}
+					value.append((char) c);
+				}
+				continue;
+			}
+			if (c < 0 || c == '\n' || c == delimiter) {
+				values.add(quoted || value.length() > 0 ? value.toString() : null);
+				if (c != delimiter)
+					return values.toArray(new String[0]);
+				value.setLength(0);
+				quoted = false;
+			} else if (c != '\r') {
+				value.append((char) c);
+			}
+			c = in.read();
+		}
+	}
+
+	private Map<String, String> readJson() throws IOException {
+		do {
+			json = in.readLine();
+			line++;
+		} while (json != null && json.isBlank());
+		if (json == null)
+			return null;
+		pos = 0;
+		final Map<String, String> values = new LinkedHashMap<>();
+		expect('{');
+		if (peek() == '}') {
+			pos++;
+			return values;
+		}
+		do {
+			final String key = jsonString();
+			expect(':');
+			values.put(key, jsonValue());
+		} while (consume(','));
+		expect('}');
+		return values;
+	}
+
+	private String jsonValue() {
+		if (peek() == '"')
+			return jsonString();
+		final int start = pos;
+		while (pos < json.length() && ",}".indexOf(json.charAt(pos)) < 0 && !Character.isWhitespace(json.charAt(pos)))
+			pos++;
+		final String value = json.substring(start, pos);
+		if (value.isEmpty() || value.startsWith("{") || value.startsWith("["))
+			throw new KDHostException(String.format("Only strings, numbers and null are supported, line %d", line));
+		return NULL.equals(value) ? null : value;
+	}
+
+	private String jsonString() {
+		expect('"');
+		final StringBuilder sb = new StringBuilder();
+		while (pos < json.length()) {
+			final char c = json.charAt(pos++);
+			if (c == '"')
+				return sb.toString();
+			if (c != '\\') {
+				sb.append(c);
+				continue;
+			}
+			if (pos >= json.length())
+				break;
+			final char escaped = json.charAt(pos++);
+			switch (escaped) {
+			case 'n':
+				sb.append('\n');
+				break;
+			case 'r':
+				sb.append('\r');
+				break;
+			case 't':
+				sb.append('\t');
+				break;
+			case 'b':
+				sb.append('\b');
+				break;
+			case 'f':
+				sb.append('\f');
+				break;
+			case 'u':
+				if (pos + 4 > json.length())
+					throw invalidJson();
+				final String hex = json.substring(pos, pos + 4);
+				// parseInt accepts sign too
+				if (!hex.chars().allMatch(digit -> Character.digit(digit, 16) >= 0))
+					throw invalidJson();
+				sb.append((char) Integer.parseInt(hex, 16));
+				pos += 4;
+				break;
+			default:
+				sb.append(escaped);
+				break;
+			}
+		}
+		throw invalidJson();
+	}
+
+	private char peek() {
+		while (pos < json.length() && Character.isWhitespace(json.charAt(pos)))
+			pos++;
+		return pos < json.length() ? json.charAt(pos) : 0;
+	}
+
+	private boolean consume(char c) {
+		if (peek() != c)
+			return false;
+		pos++;
+		return true;
+	}
+
+	private void expect(char c) {
+		if (!consume(c))
+			throw invalidJson();
+	}
+
+	private KDHostException invalidJson() {
+		return new KDHostException(String.format("Invalid JSON in line %d at position %d", line, pos + 1));
+	}
+
+	@Override
+	public void close() throws IOException {
+		in.close();
+	}
+}
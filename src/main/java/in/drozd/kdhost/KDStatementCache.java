@@ -0,0 +1,81 @@
+package in.drozd.kdhost;
+
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * LRU cache of prepared MRPC calls for one connection. Statements are keyed by
+ * MRPC id and number of parameters and returned with cleared parameters.
+ *
+ * Not thread safe - connection (session) is used by one thread at time.
+ */
+public class KDStatementCache implements AutoCloseable {
+
+	private final Connection connection;
+	private final Map<String, CallableStatement> statements;
+
+	public KDStatementCache(Connection connection, int maxSize) {
+		this.connection = connection;
+		// Access order - least recently used statement is evicted first
+		this.statements = new LinkedHashMap<>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, CallableStatement> eldest) {
+				if (size() > maxSize) {
+					closeQuietly(eldest.getValue());
+					return true;
+				}
+				return false;
+			}
+		};
+	}
+
+	public static String mrpcCallString(String mrpcId, int numberOfParameters) {
+		return "{call mrpc(" + mrpcId + String.join("", Collections.nCopies(numberOfParameters, ",?")) + ")}";
+	}
+
+	public CallableStatement prepareMrpc(String mrpcId, int numberOfParameters) throws SQLException {
+		final String key = mrpcId + "/" + numberOfParameters;
+		CallableStatement cs = statements.get(key);
+		if (cs != null && !cs.isClosed()) {
+			cs.clearParameters();
+			return cs;
+		}
+		cs = connection.prepareCall(mrpcCallString(mrpcId, numberOfParameters));
+		statements.put(key, cs);
+		return cs;
+	}
+
+	/**
+	 * Remove statement from cache, used when statement failed and can't be
+	 * trusted anymore.
+	 */
+	public void evict(String mrpcId, int numberOfParameters) {
+		closeQuietly(statements.remove(mrpcId + "/" + numberOfParameters));
+	}
+
+	public int size() {
+		return statements.size();
+	}
+
+	@Override
+	public void close() {
+		statements.values().forEach(KDStatementCache::closeQuietly);
+		statements.clear();
+	}
+
+	private static void closeQuietly(CallableStatement cs) {
+		if (cs == null)
+			return;
+		try {
+			cs.close();
+		} catch (SQLException e) {
+			// Connection will be closed anyway
+		}
+	}
+}
@@ -0,0 +1,84 @@
+package in.drozd.kdhost;
+
+import java.nio.file.Path;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Outcome of test, send and compile of one element: last stage reached, host
+ * message and time spent in each stage.
+ */
+public class KDTscResult {
+
+	public enum Stage {
+		TEST, SEND, COMPILE
+	}
+
+	private final Path file;
+	private final Map<Stage, Long> timings = new EnumMap<>(Stage.class);
+
+	private Stage stage = null;
+	private long stageStart;
+	private boolean success = false;
+	private String message = "";
+
+	public KDTscResult(Path file) {
+		this.file = file;
+	}
+
+	void start(Stage next) {
+		finishStage();
+		this.stage = next;
+		this.stageStart = System.nanoTime();
+	}
+
+	void setMessage(String message) {
+		this.message = message == null ? "" : message;
+	}
+
+	void passed() {
+		finishStage();
+		this.success = true;
+	}
+
+	void failed(String message) {
+		finishStage();
+		this.success = false;
+		setMessage(message);
+	}
+
+	private void finishStage() {
+		if (stage != null && !timings.containsKey(stage))
+			timings.put(stage, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - stageStart));
+	}
+
+	public Path getFile() {
+		return file;
+	}
+
+	public Stage getStage() {
+		return stage;
+	}
+
+	public boolean isSuccess() {
+		return success;
+	}
+
+	public String getMessage() {
+		return message;
+	}
+
+	public Map<Stage, Long> getTimings() {
+		return timings;
+	}
+
+	@Override
+	public String toString() {
+		final String times = timings.entrySet().stream()
+				.map(e -> String.format("%s %dms", e.getKey(), e.getValue())).collect(Collectors.joining(", "));
+		return String.format("%-4s %-7s %s [%s] %s", success ? "OK" : "FAIL", stage == null ? "" : stage, file, times,
+				message.replaceAll("\\s+", " ").trim());
+	}
+}
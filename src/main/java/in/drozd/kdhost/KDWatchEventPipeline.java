@@ -0,0 +1,143 @@
+package in.drozd.kdhost;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import in.drozd.kdhost.utils.KDFileUtils;
+
+/**
+ * Stage between file watcher and host.
+ *
+ * Events for the same file are coalesced until file is quiet for given time.
+ * Files which content didn't change since they were processed successfully
+ * last time are skipped. Different files are processed in parallel by bounded number of
+ * workers, same file is never processed by two workers at once.
+ */
+public class KDWatchEventPipeline implements AutoCloseable {
+
+	private final long quietMillis;
+	private final Predicate<Path> onChange;
+	private final Consumer<Path> onDelete;
+	private final Logger log;
+
+	private final ScheduledExecutorService scheduler;
+	private final ExecutorService workers;
+
+	// Time of last event for files waiting for quiet window
+	private final Map<Path, Long> lastEvent = new ConcurrentHashMap<>();
+	// Hash of content processed successfully last time
+	private final Map<Path, String> lastHashes = new ConcurrentHashMap<>();
+	private final Set<Path> running = ConcurrentHashMap.newKeySet();
+	private final Set<Path> rerun = ConcurrentHashMap.newKeySet();
+
+	/**
+	 * @param onChange processes changed file, returns false when it failed (file
+	 *                 is processed again on next event even without change)
+	 */
+	public KDWatchEventPipeline(long quietMillis, int workers, Predicate<Path> onChange, Consumer<Path> onDelete,
+			Logger log) {
+		this.quietMillis = quietMillis;
+		this.onChange = onChange;
+		this.onDelete = onDelete;
+		this.log = log;
+		this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> daemon(r, "kdhost-watch-events"));
+		this.workers = Executors.newFixedThreadPool(Math.max(1, workers), r -> daemon(r, "kdhost-watch-worker"));
+	}
+
+	private static Thread daemon(Runnable r, String name) {
+		Thread t = new Thread(r, name);
+		t.setDaemon(true);
+		return t;
+	}
+
+	/**
+	 * File was created, modified or deleted.
+	 */
+	public void submit(Path file) {
+		final Path key = file.toAbsolutePath().normalize();
+		if (lastEvent.put(key, System.currentTimeMillis()) == null) {
+			scheduler.schedule(() -> settle(key), quietMillis, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	private void settle(Path file) {
+		final Long last = lastEvent.get(file);
+		if (last == null)
+			return;
+		final long wait = last + quietMillis - System.currentTimeMillis();
+		if (wait > 0 || !lastEvent.remove(file, last)) {
+			// New event came in meantime
+			scheduler.schedule(() -> settle(file), Math.max(wait, 1), TimeUnit.MILLISECONDS);
+			return;
+		}
+		dispatch(file);
+	}
+
+	private void dispatch(Path file) {
+		if (!running.add(file)) {
+			// Will be processed again when current run ends
+			rerun.add(file);
+			return;
+		}
+		workers.execute(() -> {
+			try {
+				process(file);
+			} catch (RuntimeException e) {
+				log.log(Level.SEVERE, () -> String.format("Can't process file: %s %s", file, e.getMessage()));
+			} finally {
+				running.remove(file);
+				if (rerun.remove(file))
+					dispatch(file);
+			}
+		});
+	}
+
+	private void process(Path file) {
+		if (!Files.exists(file)) {
+			lastHashes.remove(file);
+			onDelete.accept(file);
+			return;
+		}
+		if (Files.isDirectory(file))
+			return;
+
+		final String hash;
+		try {
+			hash = KDFileUtils.sha256(file);
+		} catch (IOException e) {
+			log.log(Level.WARNING, "Unable to read {0}", file);
+			return;
+		}
+		if (hash.equals(lastHashes.get(file))) {
+			log.log(Level.FINE, "{0} content not changed", file);
+			return;
+		}
+		if (onChange.test(file))
+			lastHashes.put(file, hash);
+		else
+			lastHashes.remove(file);
+	}
+
+	@Override
+	public void close() {
+		scheduler.shutdownNow();
+		workers.shutdown();
+		try {
+			workers.awaitTermination(1, TimeUnit.MINUTES);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
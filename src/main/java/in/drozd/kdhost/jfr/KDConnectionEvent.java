@@ -0,0 +1,33 @@
+package in.drozd.kdhost.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Opening host session (CONNECT) or waiting for session from pool (ACQUIRE).
+ */
+@Name("in.drozd.kdhost.Connection")
+@Label("Host Connection")
+@Category({ "KDHost", "Host" })
+@Description("Opening of host session or waiting for session from pool")
+@StackTrace(false)
+public class KDConnectionEvent extends Event {
+
+	@Label("Operation")
+	private String operation;
+
+	@Label("Success")
+	private boolean success;
+
+	public KDConnectionEvent(String operation) {
+		this.operation = operation;
+	}
+
+	public void ok() {
+		this.success = true;
+	}
+}
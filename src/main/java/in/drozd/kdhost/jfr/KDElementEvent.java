@@ -0,0 +1,42 @@
+package in.drozd.kdhost.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Operation on one element (get, send, compile, ...). MRPC call events of the
+ * operation are recorded in the same thread within its duration.
+ */
+@Name("in.drozd.kdhost.Element")
+@Label("Element Operation")
+@Category({ "KDHost", "Element" })
+@Description("Get, send, test or compile of one element")
+@StackTrace(false)
+public class KDElementEvent extends Event {
+
+	@Label("Operation")
+	private String operation;
+
+	@Label("Element")
+	private String element;
+
+	@Label("Result")
+	private String result;
+
+	@Label("Success")
+	private boolean success;
+
+	public KDElementEvent(String operation, String element) {
+		this.operation = operation;
+		this.element = element;
+	}
+
+	public void finish(String result, boolean success) {
+		this.result = result;
+		this.success = success;
+	}
+}
@@ -0,0 +1,51 @@
+package in.drozd.kdhost.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Round trip to host: one MRPC call.
+ */
+@Name("in.drozd.kdhost.MrpcCall")
+@Label("MRPC Call")
+@Category({ "KDHost", "Host" })
+@Description("Round trip to host: one MRPC call")
+@StackTrace(false)
+public class KDMrpcEvent extends Event {
+
+	@Label("MRPC")
+	private String mrpc;
+
+	@Label("Request")
+	@Description("MRPC121 request type (INITCODE, RETOBJ, ...)")
+	private String request;
+
+	@Label("Element")
+	@Description("Element processed by current thread")
+	private String element;
+
+	@Label("Characters Sent")
+	private long sent;
+
+	@Label("Characters Received")
+	private long received;
+
+	@Label("Success")
+	private boolean success;
+
+	public KDMrpcEvent(String mrpc, String request, String element, long sent) {
+		this.mrpc = mrpc;
+		this.request = request;
+		this.element = element;
+		this.sent = sent;
+	}
+
+	public void ok(long received) {
+		this.received = received;
+		this.success = true;
+	}
+}
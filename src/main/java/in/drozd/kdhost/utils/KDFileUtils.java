@@ -4,6 +4,8 @@ import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.Optional;
 
 import in.drozd.kdhost.KDElementTypes;
@@ -49,6 +51,31 @@ public class KDFileUtils {
 		return getExtension(fileName.toString());
 	}
 
+	public static String sha256(byte[] content) {
+		return toHex(newSha256().digest(content));
+	}
+
+	public static String sha256(Path file) throws IOException {
+		return sha256(Files.readAllBytes(file));
+	}
+
+	public static MessageDigest newSha256() {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			// Every JVM has to support SHA-256
+			throw new IllegalStateException(e);
+		}
+	}
+
+	public static String toHex(byte[] bytes) {
+		final StringBuilder sb = new StringBuilder(bytes.length * 2);
+		for (byte b : bytes) {
+			sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+		}
+		return sb.toString();
+	}
+
 	public static void createDirectoryIfNotExists(Path defaultDirectory) {
 		if (!defaultDirectory.toFile().exists()) {
 			try {
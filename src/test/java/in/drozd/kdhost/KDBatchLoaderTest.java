@@ -0,0 +1,65 @@
+package in.drozd.kdhost;
+
+import static org.junit.jupiter.api.Assertions.assertAll;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import in.drozd.kdhost.exceptions.KDHostException;
+import in.drozd.kdhost.simulator.KDHostSimulator;
+
+class KDBatchLoaderTest {
+
+	private static final String INSERT = "INSERT INTO DEP (CID,BAL) VALUES (?,?)";
+
+	private KDHostSimulator simulator;
+
+	@BeforeEach
+	void setUp() {
+		simulator = KDHostSimulator.get(getClass().getSimpleName() + System.nanoTime());
+	}
+
+	@AfterEach
+	void tearDown() {
+		KDHostSimulator.remove(simulator.getUrl().substring(KDHostSimulator.URL_PREFIX.length()));
+	}
+
+	@Test
+	void testParameterCount() {
+		assertAll("Parameters",
+				() -> assertEquals(2, KDBatchLoader.parameterCount("INSERT INTO DEP (CID,BAL,DES) VALUES (?,?,'Why?')")),
+				() -> assertEquals(0, KDBatchLoader.parameterCount("UPDATE DEP SET DES=\"?\"")),
+				() -> assertThrows(KDHostException.class, () -> new KDBatchLoader(INSERT, 3)));
+	}
+
+	@Test
+	void testBatchIsOneRoundTrip() throws SQLException {
+		final KDBatchLoader loader = new KDBatchLoader(INSERT, 2);
+		try (Connection connection = DriverManager.getConnection(simulator.getUrl())) {
+			assertEquals(3, loader.execute(connection,
+					List.of(new String[] { "1", "100" }, new String[] { "2", null }, new String[] { "3", "300" })));
+		}
+		assertEquals(1, simulator.getRequestCount("BATCH"));
+		assertEquals(3, simulator.getLoadedRows().size());
+		assertArrayEquals(new String[] { "2", null }, simulator.getLoadedRows().get(1));
+	}
+
+	@Test
+	void testFailedBatch() throws SQLException {
+		final KDBatchLoader loader = new KDBatchLoader(INSERT, 2);
+		try (Connection connection = DriverManager.getConnection(simulator.getUrl())) {
+			assertThrows(SQLException.class, () -> loader.execute(connection,
+					List.<String[]>of(new String[] { "1", KDHostSimulator.ERROR_MARKER })));
+		}
+		assertEquals(0, simulator.getLoadedRows().size());
+	}
+}
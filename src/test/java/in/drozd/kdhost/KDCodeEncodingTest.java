@@ -0,0 +1,62 @@
+package in.drozd.kdhost;
+
+import static org.junit.jupiter.api.Assertions.assertAll;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.Test;
+
+import in.drozd.kdhost.exceptions.KDHostException;
+
+class KDCodeEncodingTest {
+
+	private static final byte[] ASCII = "Q ;Comment\r\n".getBytes(StandardCharsets.US_ASCII);
+	private static final byte[] UTF = "Zażółć".getBytes(StandardCharsets.UTF_8);
+
+	@Test
+	void testDecimal() {
+		assertAll("DECIMAL", () -> assertEquals("81|32|", KDCodeEncoding.DECIMAL.encode(new byte[] { 81, 32 })), //
+				() -> assertEquals("-59|", KDCodeEncoding.DECIMAL.encode(new byte[] { -59 })), //
+				() -> assertEquals(270, KDCodeEncoding.DECIMAL.chunkSize(1350)), //
+				() -> assertEquals("", KDCodeEncoding.DECIMAL.marker()));
+	}
+
+	@Test
+	void testHex() {
+		assertEquals("512000FF", KDCodeEncoding.HEX.encode(new byte[] { 0x51, 0x20, 0, -1 }));
+	}
+
+	@Test
+	void testBase64ChunkIsComplete() {
+		assertEquals(0, KDCodeEncoding.BASE64.chunkSize(1350) % 3);
+	}
+
+	@Test
+	void testRawOnlyForAscii() {
+		assertAll("RAW", () -> assertTrue(KDCodeEncoding.RAW.canEncode(ASCII)), //
+				() -> assertFalse(KDCodeEncoding.RAW.canEncode(UTF)), //
+				() -> assertEquals("Q ;Comment\r\n", KDCodeEncoding.RAW.encode(ASCII)));
+	}
+
+	@Test
+	void testForName() {
+		assertAll("Name", () -> assertEquals(KDCodeEncoding.BASE64, KDCodeEncoding.forName(" base64 ")), //
+				() -> assertTrue(assertThrows(KDHostException.class, () -> KDCodeEncoding.forName("UTF8")).getMessage()
+						.contains("DECIMAL, HEX, BASE64, RAW")));
+	}
+
+	@Test
+	void testSelect() {
+		assertAll("Select", () -> assertEquals(KDCodeEncoding.DECIMAL, KDCodeEncoding.select(ASCII, "")), //
+				() -> assertEquals(KDCodeEncoding.DECIMAL, KDCodeEncoding.select(ASCII, null)), //
+				() -> assertEquals(KDCodeEncoding.HEX, KDCodeEncoding.select(ASCII, "{\"INITCODE_HEX\":1}")), //
+				() -> assertEquals(KDCodeEncoding.RAW,
+						KDCodeEncoding.select(ASCII, "initcode_hex,initcode_raw,initcode_base64")), //
+				() -> assertEquals(KDCodeEncoding.BASE64,
+						KDCodeEncoding.select(UTF, "initcode_hex,initcode_raw,initcode_base64")));
+	}
+}
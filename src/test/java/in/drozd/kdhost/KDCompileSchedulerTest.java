@@ -0,0 +1,67 @@
+package in.drozd.kdhost;
+
+import static org.junit.jupiter.api.Assertions.assertAll;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+
+import in.drozd.kdhost.exceptions.KDHostException;
+
+class KDCompileSchedulerTest {
+
+	private static List<KDHostElement> elements(String... files) {
+		return Stream.of(files).map(file -> new KDHostElement(Path.of(file))).collect(Collectors.toList());
+	}
+
+	@Test
+	void testTablesAreCompiledFirst() {
+		final List<String> compiled = new CopyOnWriteArrayList<>();
+		try (KDHost host = new KDHost(Logger.getAnonymousLogger())) {
+			KDCompileScheduler scheduler = new KDCompileScheduler(host, el -> {
+				compiled.add(el.getFileName());
+				return "Compiled";
+			}, 1, Logger.getAnonymousLogger());
+			List<KDTscResult> results = scheduler.compile(elements("MRPC121.PROC", "DEP-BAL.COL", "DEP.TBL"));
+
+			assertAll("Compile", () -> assertEquals(List.of("DEP.TBL", "DEP-BAL.COL", "MRPC121.PROC"), compiled),
+					() -> assertEquals(Path.of("MRPC121.PROC"), results.get(0).getFile()),
+					() -> assertTrue(results.stream().allMatch(KDTscResult::isSuccess)));
+		}
+	}
+
+	@Test
+	void testFailureCancelsOnlyDependents() {
+		try (KDHost host = new KDHost(Logger.getAnonymousLogger())) {
+			KDCompileScheduler scheduler = new KDCompileScheduler(host, el -> {
+				if ("DEP.TBL".equals(el.getFileName()))
+					throw new KDHostException("Invalid table");
+				return "Compiled";
+			}, 2, Logger.getAnonymousLogger());
+			List<KDTscResult> results = scheduler
+					.compile(elements("DEP.TBL", "DEP-BAL.COL", "LN-BAL.COL", "MRPC121.PROC", "DEP-AFTER.TRIG"));
+
+			assertAll("Compile", () -> assertFalse(results.get(0).isSuccess()),
+					() -> assertFalse(results.get(1).isSuccess()), //
+					() -> assertTrue(results.get(2).isSuccess()), //
+					() -> assertTrue(results.get(3).isSuccess()), //
+					() -> assertFalse(results.get(4).isSuccess()));
+		}
+	}
+
+	@Test
+	void testTableOf() {
+		assertAll("Table", () -> assertEquals(Optional.of("DEP"), KDCompileScheduler.tableOf(new KDHostElement("DEP.TBL"))),
+				() -> assertEquals(Optional.of("DEP"), KDCompileScheduler.tableOf(new KDHostElement("DEP-BAL.COL"))),
+				() -> assertEquals(Optional.empty(), KDCompileScheduler.tableOf(new KDHostElement("MRPC121.PROC"))));
+	}
+}
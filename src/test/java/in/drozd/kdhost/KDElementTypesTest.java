@@ -0,0 +1,30 @@
+package in.drozd.kdhost;
+
+import static org.junit.jupiter.api.Assertions.assertAll;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+class KDElementTypesTest {
+
+	@Test
+	void testVersionQueryProcedure() {
+		assertEquals("SELECT PROCID,LTD,TIME FROM DBTBL25 WHERE PROCID IN ('MRPC121','O''X') ",
+				KDElementTypes.PROCEDURE.getVersionQuery(List.of("MRPC121", "O'X")));
+	}
+
+	@Test
+	void testVersionQueryColumn() {
+		assertAll("Column", () -> assertEquals("FID", KDElementTypes.COLUMN.getVersionKeyField()), //
+				() -> assertEquals("SELECT FID,DI,LTD FROM DBTBL1D WHERE FID IN ('DEP') ",
+						KDElementTypes.COLUMN.getVersionQuery(List.of("DEP"))));
+	}
+
+	@Test
+	void testVersionQueryNotSupported() {
+		assertNull(KDElementTypes.PSL.getVersionQuery(List.of("X")));
+	}
+}
@@ -0,0 +1,75 @@
+package in.drozd.kdhost;
+
+import static org.junit.jupiter.api.Assertions.assertAll;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+import org.junit.jupiter.api.Test;
+
+import in.drozd.kdhost.exceptions.KDHostException;
+
+class KDHostConnectionPoolTest {
+
+	private final AtomicInteger opened = new AtomicInteger();
+	private final AtomicInteger closed = new AtomicInteger();
+
+	private KDHostSession newSession() {
+		opened.incrementAndGet();
+		Connection conn = (Connection) Proxy.newProxyInstance(getClass().getClassLoader(),
+				new Class<?>[] { Connection.class }, (proxy, method, args) -> {
+					if ("close".equals(method.getName()))
+						closed.incrementAndGet();
+					return null;
+				});
+		return new KDHostSession(conn);
+	}
+
+	@Test
+	void testSessionsAreOpenedLazily() {
+		try (KDHostConnectionPool pool = new KDHostConnectionPool(this::newSession, 4,
+				Logger.getAnonymousLogger())) {
+			KDHostSession first = pool.acquire();
+			pool.release(first);
+			KDHostSession second = pool.acquire();
+			assertAll("Lazy", () -> assertSame(first, second, "Released session is reused"), //
+					() -> assertEquals(1, opened.get(), "Opened sessions"));
+			pool.release(second);
+		}
+		assertEquals(1, closed.get(), "Closed sessions");
+	}
+
+	@Test
+	void testPoolIsBounded() throws Exception {
+		try (KDHostConnectionPool pool = new KDHostConnectionPool(this::newSession, 2,
+				Logger.getAnonymousLogger())) {
+			KDHostSession first = pool.acquire();
+			pool.acquire();
+
+			CompletableFuture<KDHostSession> third = CompletableFuture.supplyAsync(pool::acquire);
+			assertThrows(TimeoutException.class, () -> third.get(100, TimeUnit.MILLISECONDS));
+
+			pool.release(first);
+			assertSame(first, third.get(1, TimeUnit.SECONDS));
+			assertEquals(2, opened.get(), "Opened sessions");
+		}
+		assertEquals(2, closed.get(), "Closed sessions");
+	}
+
+	@Test
+	void testClosedPool() {
+		KDHostConnectionPool pool = new KDHostConnectionPool(this::newSession, 1, Logger.getAnonymousLogger());
+		pool.close();
+		assertThrows(KDHostException.class, pool::acquire);
+		assertTrue(opened.get() == 0);
+	}
+}
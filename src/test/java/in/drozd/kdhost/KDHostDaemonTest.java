@@ -0,0 +1,74 @@
+package in.drozd.kdhost;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.OptionalInt;
+import java.util.logging.Logger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class KDHostDaemonTest {
+
+	@TempDir
+	Path dir;
+
+	@BeforeEach
+	void setUp() {
+		System.setProperty("KDHOST_HOME", dir.toString());
+	}
+
+	@AfterEach
+	void tearDown() {
+		System.clearProperty("KDHOST_HOME");
+	}
+
+	@Test
+	void testForwardedCommand() throws Exception {
+		final KDHostDaemon daemon = new KDHostDaemon(0, args -> {
+			System.out.println("Args: " + String.join(" ", args));
+			System.err.println("Warning");
+			return 3;
+		}, Logger.getAnonymousLogger());
+		final Thread thread = new Thread(daemon::serve);
+		thread.start();
+		try {
+			assertTrue(Files.exists(KDHostDaemon.daemonFile()));
+			for (int i = 0; i < 2; i++) {
+				final ByteArrayOutputStream out = new ByteArrayOutputStream();
+				final ByteArrayOutputStream err = new ByteArrayOutputStream();
+				final OptionalInt exitCode = KDHostDaemon.forward(new String[] { "get", "a b" },
+						new PrintStream(out), new PrintStream(err));
+				assertEquals(OptionalInt.of(3), exitCode);
+				assertEquals("Args: get a b", new String(out.toByteArray()).trim());
+				assertEquals("Warning", new String(err.toByteArray()).trim());
+			}
+			assertTrue(KDHostDaemon.stop());
+			thread.join(5000);
+			assertFalse(thread.isAlive());
+		} finally {
+			daemon.close();
+		}
+		assertFalse(Files.exists(KDHostDaemon.daemonFile()));
+		assertFalse(KDHostDaemon.stop());
+	}
+
+	@Test
+	void testNoDaemon() throws IOException {
+		assertEquals(OptionalInt.empty(), KDHostDaemon.forward(new String[] { "get" }, System.out, System.err));
+		// Daemon not running anymore
+		Files.createDirectories(KDHostDaemon.daemonFile().getParent());
+		Files.writeString(KDHostDaemon.daemonFile(),
+				"port=1\ntoken=x\ndirectory=" + Path.of("").toAbsolutePath().normalize().toString().replace("\\", "\\\\"));
+		assertEquals(OptionalInt.empty(), KDHostDaemon.forward(new String[] { "get" }, System.out, System.err));
+	}
+}
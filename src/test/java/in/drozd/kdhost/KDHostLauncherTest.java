@@ -0,0 +1,56 @@
+package in.drozd.kdhost;
+
+import static org.junit.jupiter.api.Assertions.assertAll;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+
+import org.junit.jupiter.api.Test;
+
+class KDHostLauncherTest {
+
+	private static String runOffline(String... args) throws IOException {
+		final PrintStream stdout = System.out;
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try {
+			System.setOut(new PrintStream(out, true));
+			assertTrue(KDHostLauncher.runOffline(args), String.join(" ", args));
+		} finally {
+			System.setOut(stdout);
+		}
+		return out.toString();
+	}
+
+	@Test
+	void testOfflineCommands() throws IOException {
+		final long listable = KDElementTypes.stream().filter(KDElementTypes::isListable).count();
+		assertAll("Offline",
+				() -> assertEquals(KDElementTypes.stream().count(), runOffline("list", "-s").lines().count()),
+				() -> assertEquals(listable, runOffline("list", "-l", "-n").lines().count()),
+				() -> assertEquals(listable, runOffline("list", "-ln").lines().count()),
+				() -> assertTrue(runOffline("list", "-sn").lines().allMatch(line -> line.matches("[a-z0-9_]+"))),
+				() -> assertTrue(runOffline("--version").startsWith("version: ")));
+	}
+
+	@Test
+	void testOnlineCommands() throws IOException {
+		assertAll("Online", () -> assertFalse(KDHostLauncher.runOffline(new String[] { "list", "procedure" })),
+				() -> assertFalse(KDHostLauncher.runOffline(new String[] { "list", "-n" })),
+				() -> assertFalse(KDHostLauncher.runOffline(new String[] { "list", "-s", "--no-cache" })),
+				() -> assertFalse(KDHostLauncher.runOffline(new String[] { "-v", "INFO", "list", "-s" })),
+				() -> assertFalse(KDHostLauncher.runOffline(new String[] {})));
+	}
+
+	@Test
+	void testForwardedCommands() {
+		assertAll("Forwarded", () -> assertTrue(KDHostLauncher.isForwarded(new String[] { "-v", "INFO", "get", "X" })),
+				() -> assertTrue(KDHostLauncher.isForwarded(new String[] { "sql", "select * from list" })),
+				() -> assertFalse(KDHostLauncher.isForwarded(new String[] { "watch", "get" })),
+				() -> assertFalse(KDHostLauncher.isForwarded(new String[] { "sql", "--load", "-", "insert" })),
+				() -> assertFalse(KDHostLauncher.isForwarded(new String[] { "--help" })));
+	}
+}
@@ -0,0 +1,67 @@
+package in.drozd.kdhost;
+
+import static org.junit.jupiter.api.Assertions.assertAll;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.logging.Logger;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import in.drozd.kdhost.utils.KDFileUtils;
+
+class KDHostManifestTest {
+
+	private static final byte[] CONTENT = "MRPC121\r\n".getBytes(StandardCharsets.UTF_8);
+
+	@Test
+	void testSaveAndLoadPerHost(@TempDir Path dir) {
+		final Path manifestFile = dir.resolve("manifest");
+		final Path element = Path.of("dataqwik", "procedure", "MRPC121.PROC");
+
+		KDHostManifest first = new KDHostManifest(manifestFile, "host1:1", Logger.getAnonymousLogger());
+		first.update(element, "abc", 10);
+		first.save();
+		KDHostManifest second = new KDHostManifest(manifestFile, "host2:2", Logger.getAnonymousLogger());
+		second.update(element, "def", 20);
+		second.save();
+
+		KDHostManifest loaded = new KDHostManifest(manifestFile, "host1:1", Logger.getAnonymousLogger());
+		KDHostManifest loaded2 = new KDHostManifest(manifestFile, "host2:2", Logger.getAnonymousLogger());
+		assertAll("Manifest", () -> assertEquals("abc", loaded.get(element).get().getHash()), //
+				() -> assertEquals(10, loaded.get(element).get().getSize()), //
+				() -> assertEquals("def", loaded2.get(element).get().getHash()));
+	}
+
+	@Test
+	void testDateOnlyVersionSeenTodayIsNotTrusted(@TempDir Path dir) {
+		final Path element = Path.of("dataqwik", "table", "dep", "DEP.TBL");
+		KDHostManifest manifest = new KDHostManifest(dir.resolve("manifest"), "host", Logger.getAnonymousLogger());
+		manifest.update(element, "abc", 10);
+		manifest.setHostVersion(element, "65000");
+
+		assertAll("Version", () -> assertTrue(manifest.hasHostVersion(element, "65000", false)),
+				() -> assertFalse(manifest.hasHostVersion(element, "65000", true), "Can change again today"),
+				() -> assertFalse(manifest.hasHostVersion(element, "65001", false)));
+	}
+
+	@Test
+	void testIsUnchanged(@TempDir Path dir) throws IOException {
+		final Path element = dir.resolve("MRPC121.PROC");
+		KDHostManifest manifest = new KDHostManifest(dir.resolve("manifest"), "host", Logger.getAnonymousLogger());
+		final String hash = KDFileUtils.sha256(CONTENT);
+
+		assertFalse(manifest.isUnchanged(element, hash, CONTENT.length), "Missing file");
+		Files.write(element, CONTENT);
+		assertTrue(manifest.isUnchanged(element, hash, CONTENT.length), "Same content, no manifest entry");
+		manifest.update(element, hash, CONTENT.length);
+		assertTrue(manifest.isUnchanged(element, hash, CONTENT.length), "Same content");
+		assertFalse(manifest.isUnchanged(element, KDFileUtils.sha256(new byte[] { 1 }), 1), "Other content");
+	}
+}
@@ -0,0 +1,39 @@
+package in.drozd.kdhost;
+
+import static org.junit.jupiter.api.Assertions.assertAll;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+class KDHostMetricsTest {
+
+	@Test
+	void testSamples() {
+		final KDHostMetrics metrics = new KDHostMetrics();
+		final KDHostMetrics.Sample ok = metrics.start("INITCODE", 100);
+		ok.ok(20);
+		ok.stop();
+		// Not marked as successful
+		metrics.start("INITCODE", 50).stop();
+
+		final KDHostMetrics.Operation op = metrics.getOperations().get("INITCODE");
+		assertAll("Operation", () -> assertEquals(2, op.getCount()), () -> assertEquals(1, op.getErrors()),
+				() -> assertEquals(150, op.getSent()), () -> assertEquals(20, op.getReceived()));
+	}
+
+	@Test
+	void testOutput() {
+		final KDHostMetrics metrics = new KDHostMetrics();
+		metrics.record("RETOBJ", 2_000_000, 10, 2048, true);
+		metrics.record("CONNECT", 30_000_000, 0, 0, true);
+
+		final String table = metrics.toTable();
+		final String json = metrics.toJson();
+		assertAll("Output", () -> assertTrue(table.startsWith("OPERATION")),
+				() -> assertTrue(table.indexOf("CONNECT") < table.indexOf("RETOBJ")),
+				() -> assertTrue(json.startsWith("{\"CONNECT\":{\"count\":1,\"errors\":0")),
+				() -> assertTrue(json.contains("\"RETOBJ\":{\"count\":1,\"errors\":0,\"sent\":10,\"received\":2048")),
+				() -> assertTrue(json.endsWith("}}")));
+	}
+}
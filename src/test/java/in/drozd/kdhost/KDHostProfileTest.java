@@ -0,0 +1,45 @@
+package in.drozd.kdhost;
+
+import static org.junit.jupiter.api.Assertions.assertAll;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.nio.file.Path;
+import java.util.logging.Logger;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class KDHostProfileTest {
+
+	@Test
+	void testSaveAndLoad(@TempDir Path dir) {
+		final Path file = dir.resolve("host").resolve("profile.properties");
+		KDHostProfile profile = new KDHostProfile(file, Logger.getAnonymousLogger());
+		assertEquals(1350, profile.getInt("initcode.wireLimit", 1350));
+		profile.set("initcode.wireLimit", 8192);
+		profile.save();
+
+		KDHostProfile loaded = new KDHostProfile(file, Logger.getAnonymousLogger());
+		assertAll("Profile", () -> assertEquals(8192, loaded.getInt("initcode.wireLimit", 1350)), //
+				() -> assertEquals("x", loaded.get("missing", "x")));
+	}
+
+	@Test
+	void testHostKey() {
+		try {
+			System.setProperty("KDHOST_HOST", "10.0.0.1:19200");
+			final String address = KDHostProfile.hostKey();
+			System.setProperty("KDHOST_URL", "jdbc:kdhost:sim:load?store=/tmp&latencyMs=20");
+			assertAll("Key", () -> assertEquals("10.0.0.1:19200", address),
+					() -> assertEquals("jdbc:kdhost:sim:load", KDHostProfile.hostKey()));
+		} finally {
+			System.clearProperty("KDHOST_HOST");
+			System.clearProperty("KDHOST_URL");
+		}
+	}
+
+	@Test
+	void testHostDirectory() {
+		assertEquals("127.0.0.1_49200", KDHostProfile.hostDirectory("127.0.0.1:49200").getFileName().toString());
+	}
+}
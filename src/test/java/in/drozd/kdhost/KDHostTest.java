@@ -0,0 +1,382 @@
+package in.drozd.kdhost;
+
+import static org.junit.jupiter.api.Assertions.assertAll;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import in.drozd.kdhost.simulator.KDHostSimulator;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+/**
+ * KDHost against in-process host simulator.
+ */
+class KDHostTest {
+
+	private static final String SOURCE = "MRPC121(String REQUEST)\r\n\t// Simulated procedure\r\n\tquit \"OK\"\r\n";
+
+	@TempDir
+	Path dir;
+
+	private KDHostSimulator simulator;
+
+	@BeforeEach
+	void setUp() {
+		simulator = KDHostSimulator.get(getClass().getSimpleName() + System.nanoTime());
+		System.setProperty("KDHOST_URL", simulator.getUrl());
+		System.setProperty("KDHOST_HOME", dir.resolve("home").toString());
+	}
+
+	@AfterEach
+	void tearDown() {
+		System.clearProperty("KDHOST_URL");
+		System.clearProperty("KDHOST_HOME");
+		KDHostSimulator.remove(simulator.getUrl().substring(KDHostSimulator.URL_PREFIX.length()));
+	}
+
+	// Manifest in test directory, not in working directory
+	private KDHostManifest newManifest() {
+		return new KDHostManifest(dir.resolve("manifest"), "simulator", Logger.getAnonymousLogger());
+	}
+
+	private KDHost newHost() {
+		final KDHostManifest manifest = newManifest();
+		KDHost host = new KDHost(Logger.getAnonymousLogger()) {
+			@Override
+			protected KDHostManifest getManifest() {
+				return manifest;
+			}
+		};
+		host.connectToHost();
+		return host;
+	}
+
+	private KDHost newSharedHost(KDHost host) {
+		final KDHostManifest manifest = newManifest();
+		KDHost shared = new KDHost(Logger.getAnonymousLogger(), host) {
+			@Override
+			protected KDHostManifest getManifest() {
+				return manifest;
+			}
+		};
+		shared.connectToHost();
+		return shared;
+	}
+
+	private Path write(String fileName, String content) throws IOException {
+		final Path file = dir.resolve(fileName);
+		Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+		return file;
+	}
+
+	private static String repeat(String text, int size) {
+		final StringBuilder sb = new StringBuilder(size + text.length());
+		while (sb.length() < size)
+			sb.append(text);
+		return sb.toString();
+	}
+
+	@Test
+	void testGetElementInPages() throws IOException {
+		final String content = repeat(SOURCE, 5000);
+		simulator.pageSize(700).put("MRPC121.PROC", content);
+		final Path file = dir.resolve("MRPC121.PROC");
+
+		try (KDHost host = newHost()) {
+			assertEquals(KDFetchResult.NEW, host.getElement(new KDHostElement(file)));
+		}
+		assertAll("Get", () -> assertEquals(content, Files.readString(file)),
+				() -> assertTrue(simulator.getRequestCount("RETOBJ") > 1));
+	}
+
+	@Test
+	void testMetricsOfGet() throws IOException {
+		final String content = repeat(SOURCE, 5000);
+		simulator.pageSize(700).put("MRPC121.PROC", content);
+		KDHostMetrics.get().reset();
+
+		try (KDHost host = newHost()) {
+			host.getElement(new KDHostElement(dir.resolve("MRPC121.PROC")));
+		}
+		final Map<String, KDHostMetrics.Operation> operations = KDHostMetrics.get().getOperations();
+		assertAll("Metrics", () -> assertEquals(1, operations.get("INITOBJ").getCount()),
+				() -> assertEquals(simulator.getRequestCount("RETOBJ"), operations.get("RETOBJ").getCount()),
+				() -> assertTrue(operations.get("RETOBJ").getReceived() >= content.length()),
+				() -> assertEquals(0, operations.get("RETOBJ").getErrors()),
+				() -> assertEquals(1, operations.get("CONNECT").getCount()),
+				() -> assertEquals(content.length(), operations.get("FILE_WRITE").getSent()));
+	}
+
+	@Test
+	void testSharedSessions() throws IOException {
+		simulator.put("MRPC121.PROC", SOURCE);
+		KDHostMetrics.get().reset();
+
+		try (KDHost host = newHost()) {
+			for (int i = 0; i < 3; i++) {
+				try (KDHost shared = newSharedHost(host)) {
+					shared.getElement(new KDHostElement(dir.resolve("MRPC121.PROC")));
+				}
+			}
+			// Sessions are open until host is closed
+			host.getElement(new KDHostElement(dir.resolve("MRPC121.PROC")));
+		}
+		assertEquals(1, KDHostMetrics.get().getOperations().get("CONNECT").getCount());
+	}
+
+	@Test
+	void testJfrEvents() throws IOException {
+		simulator.put("MRPC121.PROC", SOURCE);
+		final Path recordingFile = dir.resolve("kdhost.jfr");
+
+		try (Recording recording = new Recording()) {
+			recording.enable("in.drozd.kdhost.MrpcCall");
+			recording.enable("in.drozd.kdhost.Element");
+			recording.enable("in.drozd.kdhost.Connection");
+			recording.start();
+			try (KDHost host = newHost()) {
+				host.getElement(new KDHostElement(dir.resolve("MRPC121.PROC")));
+			}
+			recording.stop();
+			recording.dump(recordingFile);
+		}
+		final List<RecordedEvent> events = RecordingFile.readAllEvents(recordingFile);
+		final List<RecordedEvent> mrpcs = events.stream()
+				.filter(e -> e.getEventType().getName().equals("in.drozd.kdhost.MrpcCall"))
+				.collect(Collectors.toList());
+		assertAll("Events", () -> assertTrue(mrpcs.size() >= 2),
+				() -> assertTrue(mrpcs.stream().allMatch(e -> "MRPC121.PROC".equals(e.getString("element")))),
+				() -> assertTrue(mrpcs.stream().anyMatch(e -> "RETOBJ".equals(e.getString("request")))),
+				() -> assertTrue(events.stream().anyMatch(e -> e.getEventType().getName().equals("in.drozd.kdhost.Element")
+						&& "GET".equals(e.getString("operation")) && e.getBoolean("success"))),
+				() -> assertTrue(events.stream().anyMatch(e -> e.getEventType().getName().equals("in.drozd.kdhost.Connection")
+						&& "CONNECT".equals(e.getString("operation")))));
+	}
+
+	@Test
+	void testIncrementalGetOfUnchangedElement() throws IOException {
+		simulator.put("MRPC121.PROC", SOURCE);
+		final Path file = dir.resolve("MRPC121.PROC");
+
+		try (KDHost host = newHost()) {
+			host.setIncremental(true);
+			assertEquals(KDFetchResult.NEW, host.getElement(new KDHostElement(file)));
+			assertEquals(KDFetchResult.UNCHANGED, host.getElement(new KDHostElement(file)));
+			simulator.put("MRPC121.PROC", SOURCE + "\t// changed\r\n");
+			assertEquals(KDFetchResult.CHANGED, host.getElement(new KDHostElement(file)));
+		}
+	}
+
+	@Test
+	void testListElements() {
+		simulator.put("MRPC121.PROC", SOURCE).put("MRPC122.PROC", SOURCE).put("DEP-BAL.COL", "")
+				.put("LN-BAL.COL", "");
+
+		try (KDHost host = newHost()) {
+			assertAll("List",
+					() -> assertEquals(List.of("MRPC121.PROC", "MRPC122.PROC"),
+							host.listElements(KDElementTypes.PROCEDURE, null).stream()
+									.map(KDHostElement::getFileName).sorted().collect(Collectors.toList())),
+					() -> assertEquals(List.of("DEP-BAL.COL"), host.listElements(KDElementTypes.COLUMN, "DEP")
+							.stream().map(KDHostElement::getFileName).collect(Collectors.toList())));
+		}
+	}
+
+	@Test
+	void testListingIsCachedUntilSend() throws IOException {
+		simulator.put("MRPC121.PROC", SOURCE);
+
+		try (KDHost host = newHost()) {
+			assertEquals(1, host.listElements(KDElementTypes.PROCEDURE, null).size());
+			final long queries = simulator.getRequestCount("SELECT");
+			assertEquals(1, host.listElements(KDElementTypes.PROCEDURE, null).size());
+			assertEquals(queries, simulator.getRequestCount("SELECT"));
+
+			host.sendElement(new KDHostElement(write("MRPC122.PROC", SOURCE)), false);
+			assertEquals(2, host.listElements(KDElementTypes.PROCEDURE, null).size());
+
+			host.setUseListingCache(false);
+			simulator.put("MRPC123.PROC", SOURCE);
+			assertEquals(3, host.listElements(KDElementTypes.PROCEDURE, null).size());
+		}
+	}
+
+	@Test
+	void testStreamedListing() {
+		simulator.put("MRPC121.PROC", SOURCE).put("MRPC122.PROC", SOURCE);
+
+		try (KDHost host = newHost()) {
+			host.setUseListingCache(false);
+			// Sessions of not finished listings are released on close
+			for (int i = 0; i < 10; i++) {
+				try (Stream<KDHostElement> elements = host.streamElementsOfType(KDElementTypes.PROCEDURE)) {
+					assertTrue(elements.findFirst().isPresent());
+				}
+			}
+			host.setUseListingCache(true);
+			final long queries = simulator.getRequestCount("SELECT");
+			// Listing read to the end is cached
+			assertEquals(2, host.streamElementsOfTypes(Stream.of(KDElementTypes.PROCEDURE)).count());
+			assertEquals(2, host.listElements(KDElementTypes.PROCEDURE, null).size());
+			assertEquals(queries + 1, simulator.getRequestCount("SELECT"));
+		}
+	}
+
+	@Test
+	void testCatalogIsFetchedOnce() {
+		simulator.put("MRPC121.PROC", SOURCE).put("DEP-BAL.COL", "").put("LN-BAL.COL", "");
+
+		try (KDHost host = newHost()) {
+			host.listElements(KDElementTypes.PROCEDURE, null);
+			host.listElements(KDElementTypes.COLUMN, "DEP");
+		}
+		// Catalog is kept with cached listings
+		try (KDHost host = newHost()) {
+			assertEquals(List.of("LN-BAL.COL"), host.listElements(KDElementTypes.COLUMN, "LN").stream()
+					.map(KDHostElement::getFileName).collect(Collectors.toList()));
+		}
+		assertEquals(1, simulator.getRequestCount("CATALOG"));
+	}
+
+	@Test
+	void testTscWithTokenReuse() throws IOException {
+		final Path file = write("MRPC121.PROC", SOURCE);
+
+		try (KDHost host = newHost()) {
+			KDTscResult result = host.tscElement(new KDHostElement(file));
+			assertAll("Tsc", () -> assertTrue(result.isSuccess(), result::toString),
+					() -> assertEquals(KDTscResult.Stage.COMPILE, result.getStage()),
+					() -> assertEquals(SOURCE, simulator.getElement("MRPC121.PROC").get()),
+					() -> assertEquals(1, simulator.getRequestCount("INITCODE")),
+					() -> assertEquals("true", host.getProfile().get("initcode.tokenReuse", null)));
+		}
+	}
+
+	@Test
+	void testTscWithoutTokenReuse() throws IOException {
+		simulator.tokenReuse(false);
+		final Path file = write("MRPC121.PROC", SOURCE);
+
+		try (KDHost host = newHost()) {
+			assertTrue(host.tscElement(new KDHostElement(file)).isSuccess());
+			assertTrue(host.tscElement(new KDHostElement(file)).isSuccess());
+			assertAll("Tsc", () -> assertEquals(4, simulator.getRequestCount("INITCODE")),
+					() -> assertEquals("false", host.getProfile().get("initcode.tokenReuse", null)));
+		}
+	}
+
+	@Test
+	void testTscStopsOnTestCompileError() throws IOException {
+		final Path file = write("MRPC121.PROC", SOURCE + KDHostSimulator.ERROR_MARKER);
+
+		try (KDHost host = newHost()) {
+			KDTscResult result = host.tscElement(new KDHostElement(file));
+			assertAll("Tsc", () -> assertFalse(result.isSuccess()),
+					() -> assertEquals(KDTscResult.Stage.TEST, result.getStage()),
+					() -> assertFalse(simulator.getElement("MRPC121.PROC").isPresent()));
+		}
+	}
+
+	@Test
+	void testCodeChunkLimitIsProbed() throws IOException {
+		simulator.maxCodeLength(3000);
+		final String content = repeat(SOURCE, 20000);
+		final Path file = write("MRPC121.PROC", content);
+
+		final int limit;
+		try (KDHost host = newHost()) {
+			host.sendElement(new KDHostElement(file), false);
+			limit = host.getProfile().getInt("initcode.wireLimit", 0);
+		}
+		assertAll("Chunk limit", () -> assertEquals(content, simulator.getElement("MRPC121.PROC").get()),
+				() -> assertTrue(limit > 0 && limit < 16384, () -> "Limit: " + limit));
+	}
+
+	@Test
+	void testTransientFailureDoesNotReduceChunkLimit() throws IOException {
+		simulator.failNext("INITCODE");
+		final String content = repeat(SOURCE, 20000);
+		final Path file = write("MRPC121.PROC", content);
+
+		final int limit;
+		try (KDHost host = newHost()) {
+			host.sendElement(new KDHostElement(file), false);
+			limit = host.getProfile().getInt("initcode.wireLimit", 0);
+		}
+		assertAll("Chunk limit", () -> assertEquals(content, simulator.getElement("MRPC121.PROC").get()),
+				() -> assertEquals(16384, limit));
+	}
+
+	@Test
+	void testLoadStopsAtFailedBatch() throws IOException {
+		final StringBuilder csv = new StringBuilder("A,B\n").append(KDHostSimulator.ERROR_MARKER).append(",0\n");
+		for (int i = 1; i < 6; i++) {
+			csv.append(i).append(",v").append(i).append('\n');
+		}
+		final Path input = write("rows.csv", csv.toString());
+
+		try (KDHost host = newHost()) {
+			assertThrows(RuntimeException.class,
+					() -> KDHostMain.runServed(host, new String[] { "sql", "--load", input.toString(), "--format",
+							"csv", "--batch-size", "1", "--jobs", "2", "insert into t (a,b) values (?,?)" }));
+		}
+		assertAll("Load", () -> assertEquals(1, simulator.getRequestCount("BATCH")), //
+				() -> assertTrue(simulator.getLoadedRows().isEmpty()));
+	}
+
+	@Test
+	void testDenserEncodingIsUsed() throws IOException {
+		simulator.features("INITCODE_HEX,INITCODE_BASE64");
+		final Path file = write("MRPC121.PROC", SOURCE);
+
+		try (KDHost host = newHost()) {
+			host.sendElement(new KDHostElement(file), false);
+		}
+		assertEquals(SOURCE, simulator.getElement("MRPC121.PROC").get());
+	}
+
+	@Test
+	void testParallelSessions() {
+		simulator.latency(5);
+		final Map<String, Boolean> fetched = new ConcurrentHashMap<>();
+		for (int i = 0; i < 20; i++)
+			simulator.put("MRPC" + i + ".PROC", SOURCE);
+
+		try (KDHost host = newHost()) {
+			host.forEachParallel(host.listElements(KDElementTypes.PROCEDURE, null).stream(), el -> fetched
+					.put(el.getFileName(), host.getElement(new KDHostElement(dir.resolve(el.getFileName())))
+							.equals(KDFetchResult.NEW)));
+		}
+		assertAll("Parallel", () -> assertEquals(20, fetched.size()),
+				() -> assertTrue(fetched.values().stream().allMatch(Boolean::booleanValue)));
+	}
+
+	@Test
+	void testDrop() {
+		simulator.put("MRPC121.PROC", SOURCE);
+
+		try (KDHost host = newHost()) {
+			host.drop(new KDHostElement("MRPC121.PROC"));
+		}
+		assertFalse(simulator.getElement("MRPC121.PROC").isPresent());
+	}
+}
@@ -0,0 +1,38 @@
+package in.drozd.kdhost;
+
+import static org.junit.jupiter.api.Assertions.assertAll;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+class KDLatencyHistogramTest {
+
+	@Test
+	void testBucketBounds() {
+		for (long value : new long[] { 0, 1, 3, 4, 5, 7, 8, 9, 10, 1000, 123_456_789 }) {
+			final int bucket = KDLatencyHistogram.bucket(value);
+			assertTrue(KDLatencyHistogram.upperBound(bucket) >= value, "Upper bound of " + value);
+			assertTrue(bucket == 0 || KDLatencyHistogram.upperBound(bucket - 1) < value, "Lower bound of " + value);
+		}
+	}
+
+	@Test
+	void testPercentiles() {
+		final KDLatencyHistogram histogram = new KDLatencyHistogram();
+		for (int i = 1; i <= 1000; i++)
+			histogram.record(i * 1_000_000L);
+
+		assertAll("Histogram", () -> assertEquals(1000, histogram.getCount()),
+				() -> assertEquals(1_000_000_000L, histogram.getMax()),
+				() -> assertEquals(500_500_000_000L, histogram.getTotal()),
+				() -> assertTrue(Math.abs(histogram.percentile(0.5) - 500_000_000L) < 125_000_000L),
+				() -> assertTrue(Math.abs(histogram.percentile(0.99) - 990_000_000L) < 250_000_000L),
+				() -> assertEquals(histogram.getMax(), histogram.percentile(1)));
+	}
+
+	@Test
+	void testEmpty() {
+		assertEquals(0, new KDLatencyHistogram().percentile(0.5));
+	}
+}
@@ -0,0 +1,71 @@
+package in.drozd.kdhost;
+
+import static org.junit.jupiter.api.Assertions.assertAll;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import java.util.Set;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class KDListingCacheTest {
+
+	@TempDir
+	Path dir;
+
+	private static List<String> names(List<KDHostElement> elements) {
+		return elements.stream().map(KDHostElement::getFileName).collect(Collectors.toList());
+	}
+
+	@Test
+	void testPutAndGet() {
+		final KDListingCache cache = new KDListingCache(dir, 60_000, Logger.getAnonymousLogger());
+		assertFalse(cache.get(KDElementTypes.COLUMN, "DEP").isPresent());
+		cache.put(KDElementTypes.COLUMN, "DEP",
+				List.of(new KDHostElement("DEP-BAL.COL"), new KDHostElement("DEP-CID.COL")));
+
+		final List<KDHostElement> cached = cache.get(KDElementTypes.COLUMN, "DEP").get();
+		assertAll("Cached", () -> assertEquals(List.of("DEP-BAL.COL", "DEP-CID.COL"), names(cached)),
+				() -> assertEquals(KDElementTypes.COLUMN, cached.get(0).getElementType()),
+				() -> assertFalse(cache.get(KDElementTypes.COLUMN, null).isPresent()));
+	}
+
+	@Test
+	void testExpired() throws IOException {
+		final KDListingCache cache = new KDListingCache(dir, 60_000, Logger.getAnonymousLogger());
+		cache.put(KDElementTypes.PROCEDURE, null, List.of(new KDHostElement("MRPC121.PROC")));
+		Files.setLastModifiedTime(dir.resolve("PROCEDURE.list"),
+				FileTime.fromMillis(System.currentTimeMillis() - 120_000));
+		assertFalse(cache.get(KDElementTypes.PROCEDURE, null).isPresent());
+	}
+
+	@Test
+	void testTables() {
+		final KDListingCache cache = new KDListingCache(dir, 60_000, Logger.getAnonymousLogger());
+		assertFalse(cache.getTables().isPresent());
+		cache.putTables(Set.of("DBTBL1", "DBTBL25"));
+		assertEquals(Set.of("DBTBL1", "DBTBL25"), cache.getTables().get());
+	}
+
+	@Test
+	void testInvalidate() {
+		final KDListingCache cache = new KDListingCache(dir, 60_000, Logger.getAnonymousLogger());
+		cache.put(KDElementTypes.COLUMN, null, List.of());
+		cache.put(KDElementTypes.COLUMN, "DEP", List.of());
+		cache.put(KDElementTypes.PROCEDURE, null, List.of());
+		cache.invalidate(KDElementTypes.COLUMN);
+
+		assertAll("Invalidated", () -> assertFalse(cache.get(KDElementTypes.COLUMN, null).isPresent()),
+				() -> assertFalse(cache.get(KDElementTypes.COLUMN, "DEP").isPresent()),
+				() -> assertTrue(cache.get(KDElementTypes.PROCEDURE, null).isPresent()));
+	}
+}
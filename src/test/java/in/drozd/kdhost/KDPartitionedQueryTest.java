@@ -0,0 +1,46 @@
+package in.drozd.kdhost;
+
+import static org.junit.jupiter.api.Assertions.assertAll;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import in.drozd.kdhost.exceptions.KDHostException;
+
+class KDPartitionedQueryTest {
+
+	@Test
+	void testPartitionQueries() {
+		final KDPartitionedQuery query = new KDPartitionedQuery("SELECT CID,BAL FROM DEP", "CID");
+		assertAll("Partitions", () -> assertEquals("SELECT MIN(CID),MAX(CID) FROM DEP", query.probeQuery()),
+				() -> assertEquals(List.of("SELECT CID,BAL FROM DEP WHERE CID IS NULL OR CID < 100",
+						"SELECT CID,BAL FROM DEP WHERE CID >= 100 AND CID < 200",
+						"SELECT CID,BAL FROM DEP WHERE CID >= 200"), query.partitionQueries(List.of("100", "200"))),
+				() -> assertEquals(List.of("SELECT CID,BAL FROM DEP"), query.partitionQueries(List.of())));
+	}
+
+	@Test
+	void testPartitionQueriesWithWhereAndOrder() {
+		final KDPartitionedQuery query = new KDPartitionedQuery(
+				"select fid,des from dbtbl1 where %libs='SYSDEV' or fid='X' order by fid", "FID");
+		assertAll("Partitions",
+				() -> assertEquals("SELECT MIN(FID),MAX(FID) from dbtbl1 WHERE %libs='SYSDEV' or fid='X'",
+						query.probeQuery()),
+				() -> assertEquals(List.of(
+						"select fid,des from dbtbl1 WHERE (%libs='SYSDEV' or fid='X') AND (FID IS NULL OR FID < 'M') order by fid",
+						"select fid,des from dbtbl1 WHERE (%libs='SYSDEV' or fid='X') AND (FID >= 'M') order by fid"),
+						query.partitionQueries(List.of("M"))));
+	}
+
+	@Test
+	void testLinearBounds() {
+		assertAll("Bounds", () -> assertEquals(List.of("26", "51", "76"), KDPartitionedQuery.linearBounds("1", "100", 4)),
+				() -> assertEquals(List.of("0.5"), KDPartitionedQuery.linearBounds("0.0", "1.0", 2)),
+				() -> assertEquals(List.of("2"), KDPartitionedQuery.linearBounds("1", "2", 4)),
+				() -> assertEquals(List.of(), KDPartitionedQuery.linearBounds(null, null, 4)),
+				() -> assertThrows(KDHostException.class, () -> KDPartitionedQuery.linearBounds("A", "Z", 4)));
+	}
+}
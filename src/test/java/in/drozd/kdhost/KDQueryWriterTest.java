@@ -0,0 +1,57 @@
+package in.drozd.kdhost;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.io.StringWriter;
+
+import org.junit.jupiter.api.Test;
+
+class KDQueryWriterTest {
+
+	private static final String[] COLUMNS = { "FID", "DES" };
+	private static final int[] SIZES = { 12, 40 };
+
+	private static String write(KDQueryWriter.Format format, String[]... rows) throws IOException {
+		final StringWriter out = new StringWriter();
+		final KDQueryWriter writer = new KDQueryWriter(format, "|", out);
+		writer.writeHeader(COLUMNS, SIZES);
+		for (String[] row : rows) {
+			writer.writeRow(row);
+		}
+		return out.toString();
+	}
+
+	@Test
+	void testPlain() throws IOException {
+		assertEquals("FID|DES\nDEP|Deposit, \"main\"\nLN|null\n",
+				write(KDQueryWriter.Format.PLAIN, new String[] { "DEP", "Deposit, \"main\"" },
+						new String[] { "LN", null }));
+	}
+
+	@Test
+	void testCsvQuoting() throws IOException {
+		assertEquals("FID,DES\nDEP,\"Deposit, \"\"main\"\"\"\nLN,\n\"A\nB\",x\n",
+				write(KDQueryWriter.Format.CSV, new String[] { "DEP", "Deposit, \"main\"" },
+						new String[] { "LN", null }, new String[] { "A\nB", "x" }));
+	}
+
+	@Test
+	void testTsv() throws IOException {
+		assertEquals("FID\tDES\nDEP\tDeposit, main\n\"A\tB\"\tx\n", write(KDQueryWriter.Format.TSV,
+				new String[] { "DEP", "Deposit, main" }, new String[] { "A\tB", "x" }));
+	}
+
+	@Test
+	void testJsonLines() throws IOException {
+		assertEquals("{\"FID\":\"DEP\",\"DES\":\"Line \\\"1\\\"\\nLine 2\"}\n{\"FID\":\"LN\",\"DES\":null}\n",
+				write(KDQueryWriter.Format.JSONL, new String[] { "DEP", "Line \"1\"\nLine 2" },
+						new String[] { "LN", null }));
+	}
+
+	@Test
+	void testFixed() throws IOException {
+		assertEquals("FID          DES\nDEP          Deposit\n",
+				write(KDQueryWriter.Format.FIXED, new String[] { "DEP", "Deposit" }));
+	}
+}
@@ -0,0 +1,92 @@
+package in.drozd.kdhost;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Test;
+
+import in.drozd.kdhost.exceptions.KDHostException;
+
+class KDRowReaderTest {
+
+	private static final String[][] ROWS = { { "DEP", "Deposit, \"main\"" }, { "LN", null },
+			{ "A\r\nB", "Tab\tand \\" } };
+
+	private static KDRowReader reader(KDQueryWriter.Format format, String input) {
+		return new KDRowReader(format, "|", new StringReader(input));
+	}
+
+	/*
+	 * Rows written by KDQueryWriter are read back unchanged
+	 */
+	@Test
+	void testReadsWrittenRows() throws IOException {
+		for (KDQueryWriter.Format format : List.of(KDQueryWriter.Format.CSV, KDQueryWriter.Format.TSV,
+				KDQueryWriter.Format.JSONL)) {
+			final StringWriter out = new StringWriter();
+			final KDQueryWriter writer = new KDQueryWriter(format, "|", out);
+			writer.writeHeader(new String[] { "FID", "DES" }, new int[] { 12, 40 });
+			for (String[] row : ROWS) {
+				writer.writeRow(row);
+			}
+			try (KDRowReader reader = reader(format, out.toString())) {
+				assertArrayEquals(new String[] { "FID", "DES" }, reader.getColumns(), format.name());
+				for (String[] row : ROWS) {
+					assertArrayEquals(row, reader.next(), format.name());
+				}
+				assertNull(reader.next(), format.name());
+			}
+		}
+	}
+
+	@Test
+	void testPlain() throws IOException {
+		try (KDRowReader reader = reader(KDQueryWriter.Format.PLAIN, "FID|DES\nDEP|Deposit\n\nLN|null\n")) {
+			assertArrayEquals(new String[] { "DEP", "Deposit" }, reader.next());
+			assertArrayEquals(new String[] { "LN", null }, reader.next());
+			assertNull(reader.next());
+		}
+	}
+
+	@Test
+	void testSelectColumns() throws IOException {
+		try (KDRowReader reader = reader(KDQueryWriter.Format.JSONL,
+				"{\"FID\":\"DEP\", \"DES\":\"Deposit\", \"NUM\":12}\n{\"NUM\":null,\"FID\":\"LN\"}\n")) {
+			reader.selectColumns(List.of("num", "FID"));
+			assertArrayEquals(new String[] { "NUM", "FID" }, reader.getColumns());
+			assertArrayEquals(new String[] { "12", "DEP" }, reader.next());
+			assertArrayEquals(new String[] { null, "LN" }, reader.next());
+			assertThrows(KDHostException.class, () -> reader.selectColumns(List.of("BAL")));
+		}
+	}
+
+	@Test
+	void testBatches() throws IOException {
+		final StringBuilder csv = new StringBuilder("CID,BAL\n");
+		for (int i = 1; i <= 7; i++) {
+			csv.append(i).append(",").append(i * 100).append("\n");
+		}
+		try (KDRowReader reader = reader(KDQueryWriter.Format.CSV, csv.toString())) {
+			assertEquals(List.of(3, 3, 1),
+					reader.batches(3).map(List::size).collect(Collectors.toList()));
+		}
+	}
+
+	@Test
+	void testInvalidInput() {
+		assertThrows(KDHostException.class, () -> reader(KDQueryWriter.Format.CSV, "A,B\n1,2,3\n").next());
+		assertThrows(KDHostException.class, () -> reader(KDQueryWriter.Format.CSV, "A,B\n\"1,2\n").next());
+		assertThrows(KDHostException.class, () -> reader(KDQueryWriter.Format.JSONL, "{\"A\":{\"B\":1}}\n").next());
+		assertThrows(KDHostException.class, () -> reader(KDQueryWriter.Format.JSONL, "{\"A\":\"\\uZZZZ\"}\n").next());
+		assertThrows(KDHostException.class, () -> reader(KDQueryWriter.Format.JSONL, "{\"A\":\"\\u-001\"}\n").next());
+		assertThrows(KDHostException.class, () -> reader(KDQueryWriter.Format.FIXED, ""));
+	}
+}
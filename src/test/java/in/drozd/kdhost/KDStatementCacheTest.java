@@ -0,0 +1,76 @@
+package in.drozd.kdhost;
+
+import static org.junit.jupiter.api.Assertions.assertAll;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+class KDStatementCacheTest {
+
+	private final List<String> prepared = new ArrayList<>();
+	private final List<String> closed = new ArrayList<>();
+
+	private final Connection connection = (Connection) Proxy.newProxyInstance(getClass().getClassLoader(),
+			new Class<?>[] { Connection.class }, (proxy, method, args) -> {
+				if ("prepareCall".equals(method.getName())) {
+					final String sql = (String) args[0];
+					prepared.add(sql);
+					return statement(sql);
+				}
+				return null;
+			});
+
+	private CallableStatement statement(String sql) {
+		return (CallableStatement) Proxy.newProxyInstance(getClass().getClassLoader(),
+				new Class<?>[] { CallableStatement.class }, (proxy, method, args) -> {
+					switch (method.getName()) {
+					case "close":
+						closed.add(sql);
+						return null;
+					case "isClosed":
+						return closed.contains(sql);
+					case "toString":
+						return sql;
+					default:
+						return null;
+					}
+				});
+	}
+
+	@Test
+	void testMrpcCallString() {
+		assertEquals("{call mrpc(121,?,?,?,?,?,?,?,?,?)}", KDStatementCache.mrpcCallString("121", 9));
+	}
+
+	@Test
+	void testStatementIsReused() throws SQLException {
+		try (KDStatementCache cache = new KDStatementCache(connection, 2)) {
+			CallableStatement first = cache.prepareMrpc("121", 9);
+			assertSame(first, cache.prepareMrpc("121", 9));
+			assertNotSame(first, cache.prepareMrpc("121", 3));
+			assertEquals(2, prepared.size());
+		}
+		assertEquals(2, closed.size());
+	}
+
+	@Test
+	void testLeastRecentlyUsedIsEvicted() throws SQLException {
+		try (KDStatementCache cache = new KDStatementCache(connection, 2)) {
+			cache.prepareMrpc("121", 9);
+			cache.prepareMrpc("81", 3);
+			cache.prepareMrpc("121", 9);
+			cache.prepareMrpc("29", 2);
+			assertAll("LRU", () -> assertEquals(List.of("{call mrpc(81,?,?,?)}"), closed), //
+					() -> assertEquals(2, cache.size()));
+		}
+	}
+}
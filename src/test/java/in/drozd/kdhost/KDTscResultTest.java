@@ -0,0 +1,40 @@
+package in.drozd.kdhost;
+
+import static org.junit.jupiter.api.Assertions.assertAll;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Test;
+
+class KDTscResultTest {
+
+	@Test
+	void testPassed() {
+		KDTscResult result = new KDTscResult(Path.of("MRPC121.PROC"));
+		result.start(KDTscResult.Stage.TEST);
+		result.start(KDTscResult.Stage.SEND);
+		result.start(KDTscResult.Stage.COMPILE);
+		result.setMessage("Routine MRPC121 compiled");
+		result.passed();
+
+		assertAll("Result", () -> assertTrue(result.isSuccess()),
+				() -> assertEquals(KDTscResult.Stage.COMPILE, result.getStage()),
+				() -> assertEquals(3, result.getTimings().size()),
+				() -> assertTrue(result.toString().startsWith("OK")));
+	}
+
+	@Test
+	void testFailedInStage() {
+		KDTscResult result = new KDTscResult(Path.of("MRPC121.PROC"));
+		result.start(KDTscResult.Stage.TEST);
+		result.failed("%PSL-E-SYNTAX:\n 1 error");
+
+		assertAll("Result", () -> assertFalse(result.isSuccess()),
+				() -> assertEquals(KDTscResult.Stage.TEST, result.getStage()),
+				() -> assertEquals(1, result.getTimings().size()),
+				() -> assertTrue(result.toString().endsWith("%PSL-E-SYNTAX: 1 error")));
+	}
+}
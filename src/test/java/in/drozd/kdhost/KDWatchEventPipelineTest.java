@@ -0,0 +1,101 @@
+package in.drozd.kdhost;
+
+import static org.junit.jupiter.api.Assertions.assertAll;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.logging.Logger;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class KDWatchEventPipelineTest {
+
+	private static final long QUIET_MS = 50;
+
+	private final List<Path> changed = new CopyOnWriteArrayList<>();
+	private final List<Path> deleted = new CopyOnWriteArrayList<>();
+
+	private KDWatchEventPipeline newPipeline() {
+		return new KDWatchEventPipeline(QUIET_MS, 2, changed::add, deleted::add, Logger.getAnonymousLogger());
+	}
+
+	private KDWatchEventPipeline newFailingPipeline() {
+		return new KDWatchEventPipeline(QUIET_MS, 2, file -> {
+			changed.add(file);
+			return false;
+		}, deleted::add, Logger.getAnonymousLogger());
+	}
+
+	private static void waitForQuietWindow() throws InterruptedException {
+		Thread.sleep(QUIET_MS * 6);
+	}
+
+	@Test
+	void testBurstIsCoalesced(@TempDir Path dir) throws IOException, InterruptedException {
+		final Path file = dir.resolve("MRPC121.PROC");
+		try (KDWatchEventPipeline pipeline = newPipeline()) {
+			for (int i = 0; i < 5; i++) {
+				Files.write(file, ("version " + i).getBytes(StandardCharsets.UTF_8));
+				pipeline.submit(file);
+			}
+			waitForQuietWindow();
+		}
+		assertEquals(List.of(file.toAbsolutePath().normalize()), changed);
+	}
+
+	@Test
+	void testSameContentIsSkipped(@TempDir Path dir) throws IOException, InterruptedException {
+		final Path file = dir.resolve("MRPC121.PROC");
+		Files.write(file, "content".getBytes(StandardCharsets.UTF_8));
+		try (KDWatchEventPipeline pipeline = newPipeline()) {
+			pipeline.submit(file);
+			waitForQuietWindow();
+			// Touch without content change
+			Files.write(file, "content".getBytes(StandardCharsets.UTF_8));
+			pipeline.submit(file);
+			waitForQuietWindow();
+			Files.write(file, "other content".getBytes(StandardCharsets.UTF_8));
+			pipeline.submit(file);
+			waitForQuietWindow();
+		}
+		assertEquals(2, changed.size());
+	}
+
+	@Test
+	void testFailedFileIsProcessedAgain(@TempDir Path dir) throws IOException, InterruptedException {
+		final Path file = dir.resolve("MRPC121.PROC");
+		Files.write(file, "content".getBytes(StandardCharsets.UTF_8));
+		try (KDWatchEventPipeline pipeline = newFailingPipeline()) {
+			pipeline.submit(file);
+			waitForQuietWindow();
+			// Saved again without change after failure (e.g. host error)
+			pipeline.submit(file);
+			waitForQuietWindow();
+		}
+		assertEquals(2, changed.size());
+	}
+
+	@Test
+	void testDeleteAndCreateIsChange(@TempDir Path dir) throws IOException, InterruptedException {
+		final Path file = dir.resolve("MRPC121.PROC");
+		final Path removed = dir.resolve("MRPC122.PROC");
+		Files.write(removed, "content".getBytes(StandardCharsets.UTF_8));
+		try (KDWatchEventPipeline pipeline = newPipeline()) {
+			// Editor save: delete followed by create
+			pipeline.submit(file);
+			Files.write(file, "content".getBytes(StandardCharsets.UTF_8));
+			pipeline.submit(file);
+			Files.delete(removed);
+			pipeline.submit(removed);
+			waitForQuietWindow();
+		}
+		assertAll("Events", () -> assertEquals(List.of(file.toAbsolutePath().normalize()), changed),
+				() -> assertEquals(List.of(removed.toAbsolutePath().normalize()), deleted));
+	}
+}
@@ -0,0 +1,410 @@
+package in.drozd.kdhost.simulator;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import in.drozd.kdhost.KDElementTypes;
+import in.drozd.kdhost.utils.KDFileUtils;
+
+/**
+ * In-process host answering MRPC121/MRPC81 requests and listing queries, used
+ * with {@link KDSimulatorDriver}. Elements are kept in memory (by file name),
+ * they can be loaded from directory.
+ *
+ * Latency, failures (every n-th call), RETOBJ page size, maximum INITCODE chunk
+ * length, host features and token reuse after EXECCOMP can be configured.
+ */
+public class KDHostSimulator {
+
+	public static final String URL_PREFIX = "jdbc:kdhost:sim:";
+	// Content with this marker fails test compile and compile
+	public static final String ERROR_MARKER = "#SIMERROR";
+
+	private static final String CRLF = "\r\n";
+	private static final String COMPILED = "%PSL-I-LIST: 0 errors, 0 warnings, 0 informational messages";
+	private static final Pattern SELECT = Pattern.compile(
+			"(?is)\\s*SELECT\\s+(.+?)\\s+FROM\\s+(\\w+)(?:\\s+WHERE\\s+(\\w+)\\s*(?:=|IN)\\s*(.+?))?\\s*");
+	private static final Pattern FROM = Pattern.compile(" FROM (\\w+) ");
+	private static final Pattern QUOTED = Pattern.compile("'((?:[^']|'')*)'");
+
+	private static final Map<String, KDHostSimulator> SIMULATORS = new ConcurrentHashMap<>();
+
+	private final String name;
+
+	private volatile long latencyMillis = 0;
+	private volatile int pageSize = 1000;
+	private volatile int maxCodeLength = Integer.MAX_VALUE;
+	private volatile int failEvery = 0;
+	// Requests which next call fails once
+	private final Set<String> failNext = ConcurrentHashMap.newKeySet();
+	private volatile String features = "";
+	private volatile boolean tokenReuse = true;
+
+	private final Map<String, String> elements = new ConcurrentHashMap<>();
+	private final Map<String, Integer> versions = new ConcurrentHashMap<>();
+
+	private final AtomicLong tokens = new AtomicLong();
+	private final Map<String, ByteArrayOutputStream> uploads = new ConcurrentHashMap<>();
+	private final Map<String, String> downloads = new ConcurrentHashMap<>();
+
+	private final List<String[]> loadedRows = new CopyOnWriteArrayList<>();
+
+	private final AtomicLong calls = new AtomicLong();
+	private final Map<String, LongAdder> requests = new ConcurrentHashMap<>();
+
+	private KDHostSimulator(String name) {
+		this.name = name;
+	}
+
+	public static KDHostSimulator get(String name) {
+		return SIMULATORS.computeIfAbsent(name, KDHostSimulator::new);
+	}
+
+	public static void remove(String name) {
+		SIMULATORS.remove(name);
+	}
+
+	public String getUrl() {
+		return URL_PREFIX + name;
+	}
+
+	public KDHostSimulator latency(long millis) {
+		this.latencyMillis = millis;
+		return this;
+	}
+
+	public KDHostSimulator pageSize(int size) {
+		this.pageSize = size;
+		return this;
+	}
+
+	public KDHostSimulator maxCodeLength(int length) {
+		this.maxCodeLength = length;
+		return this;
+	}
+
+	public KDHostSimulator failEvery(int n) {
+		this.failEvery = n;
+		return this;
+	}
+
+	public KDHostSimulator failNext(String request) {
+		failNext.add(request);
+		return this;
+	}
+
+	public KDHostSimulator features(String features) {
+		this.features = features;
+		return this;
+	}
+
+	public KDHostSimulator tokenReuse(boolean reuse) {
+		this.tokenReuse = reuse;
+		return this;
+	}
+
+	public KDHostSimulator put(String fileName, String content) {
+		elements.put(fileName, content);
+		versions.merge(fileName, 1, Integer::sum);
+		return this;
+	}
+
+	public Optional<String> getElement(String fileName) {
+		return Optional.ofNullable(elements.get(fileName));
+	}
+
+	/**
+	 * All files from directory (and subdirectories) become elements.
+	 */
+	public KDHostSimulator loadDirectory(Path directory) throws IOException {
+		try (Stream<Path> files = Files.walk(directory)) {
+			for (Path file : files.filter(Files::isRegularFile).collect(Collectors.toList())) {
+				put(file.getFileName().toString(), new String(Files.readAllBytes(file), StandardCharsets.UTF_8));
+			}
+		}
+		return this;
+	}
+
+	public long getRequestCount(String request) {
+		final LongAdder count = requests.get(request);
+		return count == null ? 0 : count.sum();
+	}
+
+	public long getCalls() {
+		return calls.get();
+	}
+
+	/**
+	 * Values of rows executed by DML statements
+	 */
+	public List<String[]> getLoadedRows() {
+		return loadedRows;
+	}
+
+	private void roundTrip(String request) throws SQLException {
+		requests.computeIfAbsent(request, r -> new LongAdder()).increment();
+		final long call = calls.incrementAndGet();
+		if (latencyMillis > 0) {
+			try {
+				Thread.sleep(latencyMillis);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new SQLException("Interrupted");
+			}
+		}
+		if (failEvery > 0 && call % failEvery == 0)
+			throw new SQLException(String.format("Simulated host failure of %s", request));
+		if (failNext.remove(request))
+			throw new SQLException(String.format("Simulated transient failure of %s", request));
+	}
+
+	/**
+	 * Parameters: REQUEST, CODE, CMPTOK, LOCKFILE, OBJTYPE, OBJID, TOKEN, USER
+	 */
+	String mrpc121(String[] p) throws SQLException {
+		final String request = p[0];
+		roundTrip(request);
+		switch (request) {
+		case "INITOBJ":
+			return initObj(p[4], p[5]);
+		case "RETOBJ":
+			return retObj(p[6]);
+		case "INITCODE":
+			return initCode(p[1], p[2], p[4]);
+		case "CHECKOBJ":
+			return uploads.containsKey(p[6]) ? "1" + CRLF + "Element " + p[3] + " checked"
+					: "0" + CRLF + "Invalid token";
+		case "SAVEOBJ":
+			return saveObj(p[3], p[6]);
+		case "EXECCOMP":
+			return execComp(p[2]);
+		case "PRECMP":
+			if (!elements.containsKey(p[3]))
+				return "0" + CRLF + "Element " + p[3] + " not found";
+			return elements.get(p[3]).contains(ERROR_MARKER) ? "0" + CRLF + "Element " + p[3] + " has errors"
+					: "1" + CRLF + p[3];
+		case "CMPLINK":
+			return "1" + CRLF + "Compiled " + p[2].substring(Math.min(3, p[2].length()));
+		case "DROPOBJ":
+			return elements.remove(p[3]) != null ? "1" : "0" + CRLF + "Element " + p[3] + " not found";
+		case "GETFWKFTRS":
+			return features;
+		case "GETPSLCLS":
+		case "GETPSLFW":
+		case "GETPSLKW":
+			return "";
+		default:
+			throw new SQLException("Unsupported request " + request);
+		}
+	}
+
+	private String initObj(String typeDescription, String elementName) {
+		final Optional<KDElementTypes> type = KDElementTypes.stream()
+				.filter(t -> t.typeDescription().equals(typeDescription)).findFirst();
+		if (type.isEmpty())
+			return "0" + CRLF + "Unknown type " + typeDescription;
+		final String fileName = elementName + "." + type.get().fileExtension();
+		final String content = elements.get(fileName);
+		if (content == null)
+			return "0" + CRLF + "Element " + fileName + " not found";
+		final String token = nextToken();
+		downloads.put(token, content);
+		return "1" + CRLF + token + CRLF + fileName;
+	}
+
+	private String retObj(String token) throws SQLException {
+		final String rest = downloads.remove(token);
+		if (rest == null)
+			throw new SQLException("Invalid token " + token);
+		if (rest.length() <= pageSize)
+			return "0" + rest;
+		downloads.put(token, rest.substring(pageSize));
+		return "1" + rest.substring(0, pageSize);
+	}
+
+	private String initCode(String code, String token, String encoding) throws SQLException {
+		if (code.length() > maxCodeLength)
+			throw new SQLException(String.format("Code chunk too long: %d", code.length()));
+		final String current = token.isEmpty() ? nextToken() : token;
+		final ByteArrayOutputStream upload = uploads.computeIfAbsent(current, t -> new ByteArrayOutputStream());
+		final byte[] bytes = decode(code, encoding);
+		synchronized (upload) {
+			upload.write(bytes, 0, bytes.length);
+		}
+		return current;
+	}
+
+	private static byte[] decode(String code, String encoding) throws SQLException {
+		switch (encoding) {
+		case "":
+			final String[] numbers = code.split("\\|");
+			final byte[] bytes = new byte[code.isEmpty() ? 0 : numbers.length];
+			for (int i = 0; i < bytes.length; i++)
+				bytes[i] = Byte.parseByte(numbers[i]);
+			return bytes;
+		case "HEX":
+			final byte[] hex = new byte[code.length() / 2];
+			for (int i = 0; i < hex.length; i++)
+				hex[i] = (byte) Integer.parseInt(code.substring(i * 2, i * 2 + 2), 16);
+			return hex;
+		case "BASE64":
+			return Base64.getDecoder().decode(code);
+		case "RAW":
+			return code.getBytes(StandardCharsets.ISO_8859_1);
+		default:
+			throw new SQLException("Unsupported encoding " + encoding);
+		}
+	}
+
+	private String uploaded(String token) {
+		final ByteArrayOutputStream upload = uploads.get(token);
+		if (upload == null)
+			return null;
+		synchronized (upload) {
+			return new String(upload.toByteArray(), StandardCharsets.UTF_8);
+		}
+	}
+
+	private String saveObj(String fileName, String token) {
+		final String content = uploaded(token);
+		if (content == null)
+			return "0" + CRLF + "Invalid token";
+		uploads.remove(token);
+		put(fileName, content);
+		return "1";
+	}
+
+	private String execComp(String token) {
+		final String content = uploaded(token);
+		if (!tokenReuse)
+			uploads.remove(token);
+		if (content == null)
+			return "%PSL-E-TOKEN: invalid token";
+		if (content.contains(ERROR_MARKER))
+			return "%PSL-E-SYNTAX: " + ERROR_MARKER + CRLF + "%PSL-I-LIST: 1 errors, 0 warnings, 0 informational messages";
+		return COMPILED;
+	}
+
+	/**
+	 * Batch compilation, null when successful
+	 */
+	String mrpc81(String table, String element) throws SQLException {
+		roundTrip("MRPC81");
+		final String content = elements.get(element + "." + KDElementTypes.BATCH.fileExtension());
+		if (content == null)
+			return "Batch " + element + " not found";
+		return content.contains(ERROR_MARKER) ? "Batch " + element + " has errors" : null;
+	}
+
+	/**
+	 * Any other MRPC answers with its parameters
+	 */
+	String mrpc(String mrpcId, String[] parameters) throws SQLException {
+		roundTrip("MRPC" + mrpcId);
+		return String.join(",", parameters);
+	}
+
+	/**
+	 * DML batch (INSERT/UPDATE), every row updates one row. Rows containing
+	 * {@link #ERROR_MARKER} fail whole batch.
+	 */
+	int[] batch(String sql, List<String[]> rows) throws SQLException {
+		roundTrip("BATCH");
+		for (String[] row : rows) {
+			if (Arrays.asList(row).contains(ERROR_MARKER))
+				throw new SQLException("Unable to execute " + sql);
+		}
+		loadedRows.addAll(rows);
+		final int[] counts = new int[rows.size()];
+		Arrays.fill(counts, 1);
+		return counts;
+	}
+
+	/**
+	 * Catalog: tables of listable element types matching name or "%" (all)
+	 */
+	List<String> tables(String pattern) throws SQLException {
+		roundTrip("CATALOG");
+		if (pattern != null && !"%".equals(pattern))
+			return typeForTable(pattern).isPresent() ? List.of(pattern) : List.of();
+		return KDElementTypes.stream().filter(KDElementTypes::isListable).map(t -> FROM.matcher(t.getQuery()))
+				.filter(Matcher::find).map(m -> m.group(1)).distinct().collect(Collectors.toList());
+	}
+
+	private static Optional<KDElementTypes> typeForTable(String table) {
+		// First type wins (TABLE before COMPLETETABLE)
+		return KDElementTypes.stream().filter(KDElementTypes::isListable)
+				.filter(t -> t.getQuery().contains(" FROM " + table.toUpperCase() + " ")).findFirst();
+	}
+
+	/**
+	 * Listing and version queries: {@code SELECT columns FROM DBTBL* [WHERE column
+	 * = 'value' | WHERE column IN ('value', ...)]}. Key columns are taken from
+	 * element name, other columns get element version.
+	 */
+	List<String[]> query(String sql, List<String> columnNames) throws SQLException {
+		roundTrip("SELECT");
+		final Matcher m = SELECT.matcher(sql);
+		if (!m.matches())
+			throw new SQLException("Unsupported query: " + sql);
+		final KDElementTypes type = typeForTable(m.group(2))
+				.orElseThrow(() -> new SQLException("Table not found: " + m.group(2)));
+
+		final List<String> selected = Stream.of(m.group(1).split(",")).map(String::trim)
+				.collect(Collectors.toList());
+		columnNames.addAll(selected);
+		final List<String> keyColumns = Arrays.asList(type.getQuery().replaceFirst("(?i)SELECT\\s+", "")
+				.replaceFirst("(?i)\\s+FROM.*", "").split(","));
+		final int filterColumn = m.group(3) == null ? -1 : keyColumns.indexOf(m.group(3).toUpperCase());
+		final List<String> filter = new ArrayList<>();
+		if (m.group(4) != null) {
+			final Matcher values = QUOTED.matcher(m.group(4));
+			while (values.find())
+				filter.add(values.group(1).replace("''", "'"));
+		}
+
+		final List<String[]> rows = new ArrayList<>();
+		final String extension = "." + type.fileExtension();
+		for (Map.Entry<String, String> element : elements.entrySet()) {
+			if (!element.getKey().endsWith(extension))
+				continue;
+			final String[] key = KDFileUtils.getElementName(element.getKey()).split("-", keyColumns.size());
+			if (key.length < keyColumns.size())
+				continue;
+			if (type == KDElementTypes.FKEY)
+				key[1] = key[1].replace('~', ',');
+			if (filterColumn >= 0 && !filter.contains(key[filterColumn]))
+				continue;
+			final String[] row = new String[selected.size()];
+			for (int i = 0; i < row.length; i++) {
+				final int keyIndex = keyColumns.indexOf(selected.get(i).toUpperCase());
+				row[i] = keyIndex >= 0 ? key[keyIndex] : String.valueOf(versions.getOrDefault(element.getKey(), 1));
+			}
+			rows.add(row);
+		}
+		return rows;
+	}
+
+	private String nextToken() {
+		return name + "-" + tokens.incrementAndGet();
+	}
+}
@@ -0,0 +1,344 @@
+package in.drozd.kdhost.simulator;
+
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.file.Path;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.Driver;
+import java.sql.DriverManager;
+import java.sql.DriverPropertyInfo;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+
+/**
+ * JDBC driver of {@link KDHostSimulator}.
+ *
+ * URL: {@code jdbc:kdhost:sim:NAME[?latencyMs=10&pageSize=1000&maxCode=4000&failEvery=0&features=INITCODE_RAW&tokenReuse=true&store=DIR]}.
+ * Connections with the same name share one simulated host. Driver is registered
+ * with DriverManager, so it is used by KDHost when KDHOST_URL is set to such
+ * URL.
+ */
+public class KDSimulatorDriver implements Driver {
+
+	static {
+		try {
+			DriverManager.registerDriver(new KDSimulatorDriver());
+		} catch (SQLException e) {
+			throw new ExceptionInInitializerError(e);
+		}
+	}
+
+	@FunctionalInterface
+	private interface Handler {
+		Object invoke(String method, Object[] args) throws Exception;
+	}
+
+	// Returned by handler for methods it doesn't implement
+	private static final Object DEFAULT = new Object();
+
+	@Override
+	public Connection connect(String url, Properties info) throws SQLException {
+		if (!acceptsURL(url))
+			return null;
+		final String[] parts = url.substring(KDHostSimulator.URL_PREFIX.length()).split("\\?", 2);
+		final KDHostSimulator simulator = KDHostSimulator.get(parts[0]);
+		if (parts.length > 1)
+			configure(simulator, parts[1]);
+		return connection(simulator);
+	}
+
+	private static void configure(KDHostSimulator simulator, String query) throws SQLException {
+		for (String parameter : query.split("&")) {
+			final String[] kv = parameter.split("=", 2);
+			final String value = kv.length > 1 ? kv[1] : "";
+			switch (kv[0]) {
+			case "latencyMs":
+				simulator.latency(Long.parseLong(value));
+				break;
+			case "pageSize":
+				simulator.pageSize(Integer.parseInt(value));
+				break;
+			case "maxCode":
+				simulator.maxCodeLength(Integer.parseInt(value));
+				break;
+			case "failEvery":
+				simulator.failEvery(Integer.parseInt(value));
+				break;
+			case "features":
+				simulator.features(value);
+				break;
+			case "tokenReuse":
+				simulator.tokenReuse(Boolean.parseBoolean(value));
+				break;
+			case "store":
+				try {
+					simulator.loadDirectory(Path.of(value));
+				} catch (IOException e) {
+					throw new SQLException("Unable to load store " + value, e);
+				}
+				break;
+			default:
+				throw new SQLException("Unknown simulator parameter " + kv[0]);
+			}
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <T> T proxy(Class<T> type, Handler handler) {
+		return (T) Proxy.newProxyInstance(KDSimulatorDriver.class.getClassLoader(), new Class<?>[] { type },
+				(proxy, method, args) -> {
+					final Object result = handler.invoke(method.getName(), args);
+					return result == DEFAULT ? defaultValue(type, proxy, method, args) : result;
+				});
+	}
+
+	private static Object defaultValue(Class<?> type, Object proxy, Method method, Object[] args) {
+		final Class<?> returnType = method.getReturnType();
+		switch (method.getName()) {
+		case "toString":
+			return type.getSimpleName();
+		case "equals":
+			return proxy == args[0];
+		case "hashCode":
+			return System.identityHashCode(proxy);
+		default:
+			break;
+		}
+		if (returnType == boolean.class)
+			return false;
+		if (returnType == int.class)
+			return 0;
+		if (returnType == long.class)
+			return 0L;
+		return null;
+	}
+
+	private static Connection connection(KDHostSimulator simulator) {
+		final boolean[] closed = { false };
+		return proxy(Connection.class, (method, args) -> {
+			switch (method) {
+			case "prepareCall":
+				return callableStatement(simulator, (String) args[0]);
+			case "createStatement":
+				return statement(simulator);
+			case "prepareStatement":
+				return preparedStatement(simulator, (String) args[0]);
+			case "getMetaData":
+				return metaData(simulator);
+			case "getAutoCommit":
+				return true;
+			case "isValid":
+				return !closed[0];
+			case "isClosed":
+				return closed[0];
+			case "close":
+				closed[0] = true;
+				return null;
+			default:
+				return DEFAULT;
+			}
+		});
+	}
+
+	private static DatabaseMetaData metaData(KDHostSimulator simulator) {
+		return proxy(DatabaseMetaData.class, (method, args) -> {
+			switch (method) {
+			case "getDriverName":
+				return "KDHost simulator";
+			case "getDriverVersion":
+				return "1.0";
+			case "getTables":
+				return resultSet(List.of("TABLE_NAME"), simulator.tables((String) args[2]).stream()
+						.map(table -> new String[] { table }).collect(Collectors.toList()));
+			default:
+				return DEFAULT;
+			}
+		});
+	}
+
+	/*
+	 * {call mrpc(ID,?,?,...)}
+	 */
+	private static CallableStatement callableStatement(KDHostSimulator simulator, String sql) {
+		final String mrpcId = sql.replaceFirst(".*mrpc\\(\\s*([^,)]+).*", "$1").trim();
+		final int parameters = (int) sql.chars().filter(c -> c == '?').count();
+		final String[] values = new String[parameters];
+		final boolean[] closed = { false };
+		return proxy(CallableStatement.class, (method, args) -> {
+			switch (method) {
+			case "setString":
+				values[(Integer) args[0] - 1] = args[1] == null ? "" : (String) args[1];
+				return null;
+			case "clearParameters":
+				Arrays.fill(values, null);
+				return null;
+			case "executeQuery":
+				return execute(simulator, mrpcId, Arrays.copyOf(values, parameters - 1));
+			case "isClosed":
+				return closed[0];
+			case "close":
+				closed[0] = true;
+				return null;
+			default:
+				return DEFAULT;
+			}
+		});
+	}
+
+	private static ResultSet execute(KDHostSimulator simulator, String mrpcId, String[] values) throws SQLException {
+		for (int i = 0; i < values.length; i++) {
+			if (values[i] == null)
+				values[i] = "";
+		}
+		switch (mrpcId) {
+		case "121":
+			return resultSet(List.of("CODE"), List.<String[]>of(new String[] { simulator.mrpc121(values) }));
+		case "81":
+			final String error = simulator.mrpc81(values[0], values[1]);
+			return resultSet(List.of("CODE"),
+					error == null ? Collections.emptyList() : List.<String[]>of(new String[] { error }));
+		default:
+			return resultSet(List.of("KDRPCXRESPONSE"),
+					List.<String[]>of(new String[] { simulator.mrpc(mrpcId, values) }));
+		}
+	}
+
+	private static PreparedStatement preparedStatement(KDHostSimulator simulator, String sql) {
+		final int parameters = (int) sql.chars().filter(c -> c == '?').count();
+		final String[] values = new String[parameters];
+		final List<String[]> batch = new ArrayList<>();
+		return proxy(PreparedStatement.class, (method, args) -> {
+			switch (method) {
+			case "setString":
+				values[(Integer) args[0] - 1] = (String) args[1];
+				return null;
+			case "setNull":
+				values[(Integer) args[0] - 1] = null;
+				return null;
+			case "clearParameters":
+				Arrays.fill(values, null);
+				return null;
+			case "addBatch":
+				batch.add(values.clone());
+				return null;
+			case "executeBatch":
+				final List<String[]> rows = new ArrayList<>(batch);
+				batch.clear();
+				return simulator.batch(sql, rows);
+			case "executeUpdate":
+				return simulator.batch(sql, List.<String[]>of(values.clone()))[0];
+			default:
+				return DEFAULT;
+			}
+		});
+	}
+
+	private static Statement statement(KDHostSimulator simulator) {
+		final int[] fetchSize = { 0 };
+		return proxy(Statement.class, (method, args) -> {
+			switch (method) {
+			case "executeQuery":
+				final List<String> columns = new ArrayList<>();
+				final List<String[]> rows = simulator.query((String) args[0], columns);
+				return resultSet(columns, rows);
+			case "setFetchSize":
+				fetchSize[0] = (Integer) args[0];
+				return null;
+			case "getFetchSize":
+				return fetchSize[0];
+			default:
+				return DEFAULT;
+			}
+		});
+	}
+
+	private static ResultSet resultSet(List<String> columns, List<String[]> rows) {
+		final int[] row = { -1 };
+		final boolean[] closed = { false };
+		final ResultSetMetaData metaData = proxy(ResultSetMetaData.class, (method, args) -> {
+			switch (method) {
+			case "getColumnCount":
+				return columns.size();
+			case "getColumnName":
+			case "getColumnLabel":
+				return columns.get((Integer) args[0] - 1);
+			default:
+				return DEFAULT;
+			}
+		});
+		return proxy(ResultSet.class, (method, args) -> {
+			switch (method) {
+			case "next":
+				if (closed[0])
+					throw new SQLException("Result set is closed");
+				return ++row[0] < rows.size();
+			case "getString":
+				final int column = args[0] instanceof Integer ? (Integer) args[0] : columnIndex(columns, (String) args[0]);
+				if (column < 1 || column > columns.size())
+					throw new SQLException("Invalid column " + args[0]);
+				return rows.get(row[0])[column - 1];
+			case "getMetaData":
+				return metaData;
+			case "isClosed":
+				return closed[0];
+			case "close":
+				closed[0] = true;
+				return null;
+			default:
+				return DEFAULT;
+			}
+		});
+	}
+
+	private static int columnIndex(List<String> columns, String label) {
+		for (int i = 0; i < columns.size(); i++) {
+			if (columns.get(i).equalsIgnoreCase(label))
+				return i + 1;
+		}
+		return 0;
+	}
+
+	@Override
+	public boolean acceptsURL(String url) {
+		return url != null && url.startsWith(KDHostSimulator.URL_PREFIX);
+	}
+
+	@Override
+	public DriverPropertyInfo[] getPropertyInfo(String url, Properties info) {
+		return new DriverPropertyInfo[0];
+	}
+
+	@Override
+	public int getMajorVersion() {
+		return 1;
+	}
+
+	@Override
+	public int getMinorVersion() {
+		return 0;
+	}
+
+	@Override
+	public boolean jdbcCompliant() {
+		return false;
+	}
+
+	@Override
+	public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+		throw new SQLFeatureNotSupportedException();
+	}
+}